@@ -0,0 +1,87 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+/**
+ * Serialized size statistics of a session attribute, aggregated per attribute name and value class. Exposed through
+ * {@link ScaleoutSessionRepositoryMXBean#getAttributeSizeStatistics()}. Percentiles are approximated by power-of-two
+ * buckets.
+ */
+public class AttributeSizeStatistics {
+    private final String _attributeName;
+    private final String _valueClass;
+    private final long _samples;
+    private final long _p50Bytes;
+    private final long _p99Bytes;
+    private final long _maxBytes;
+
+    AttributeSizeStatistics(String attributeName, String valueClass, long samples, long p50Bytes, long p99Bytes, long maxBytes) {
+        _attributeName = attributeName;
+        _valueClass = valueClass;
+        _samples = samples;
+        _p50Bytes = p50Bytes;
+        _p99Bytes = p99Bytes;
+        _maxBytes = maxBytes;
+    }
+
+    /**
+     * Retrieves the attribute name.
+     * @return the attribute name
+     */
+    public String getAttributeName() {
+        return _attributeName;
+    }
+
+    /**
+     * Retrieves the class name of the attribute values.
+     * @return the value class name
+     */
+    public String getValueClass() {
+        return _valueClass;
+    }
+
+    /**
+     * Retrieves the number of sampled values.
+     * @return the number of samples
+     */
+    public long getSamples() {
+        return _samples;
+    }
+
+    /**
+     * Retrieves the approximate median serialized size.
+     * @return the median size in bytes
+     */
+    public long getP50Bytes() {
+        return _p50Bytes;
+    }
+
+    /**
+     * Retrieves the approximate 99th percentile serialized size.
+     * @return the 99th percentile size in bytes
+     */
+    public long getP99Bytes() {
+        return _p99Bytes;
+    }
+
+    /**
+     * Retrieves the largest sampled serialized size.
+     * @return the maximum size in bytes
+     */
+    public long getMaxBytes() {
+        return _maxBytes;
+    }
+}
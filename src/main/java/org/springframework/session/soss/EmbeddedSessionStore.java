@@ -0,0 +1,510 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import com.scaleoutsoftware.soss.client.SossIndexAttribute;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process {@link SessionStore} for single-instance deployments and tests, used in place of ScaleOut StateServer
+ * through {@link ScaleoutSessionRepository#ScaleoutSessionRepository(String, Duration, boolean, SessionStore)}.
+ *
+ * <p>
+ *     The store keeps the semantics of StateServer: objects are stored serialized with a sliding timeout, reads
+ *     return the last deserialized instance while the object is unchanged (like the client cache), locks are held by
+ *     the accessor that read the object with {@link SessionStore.ReadOption#LOCK_OBJECT} and are released after 90
+ *     seconds, and the {@link SossIndexAttribute} properties of {@link ScaleoutSession} are indexed for equality
+ *     queries. Query filters aren't evaluated, so
+ *     {@link ScaleoutSessionRepository#deleteAll(com.scaleoutsoftware.soss.client.query.Filter)} deletes nothing.
+ * </p>
+ * <p>
+ *     Keys are hashed to a fixed number of stripes, each guarded by its own lock. Each stripe owns a hashed timing
+ *     wheel that expires its objects: an object is scheduled in the slot of its expiration tick when created, and a
+ *     sliding timeout is only rescheduled when its slot comes due, so reads don't pay for expiration. Expired objects
+ *     are never returned, whether or not the wheel has removed them yet.
+ * </p>
+ */
+public class EmbeddedSessionStore implements SessionStore {
+    private static final Log logger = LogFactory.getLog(EmbeddedSessionStore.class);
+
+    /**
+     * Default number of stripes.
+     */
+    public static final int DEF_STRIPES = 64;
+    /**
+     * Default resolution of the expiration timer wheel.
+     */
+    public static final Duration DEF_TICK = Duration.ofSeconds(1);
+
+    // number of slots in a timing wheel -- objects expiring later are rescheduled when their slot comes due
+    private static final int WHEEL_SLOTS = 512;
+    // StateServer releases locks that are held longer than this
+    private static final long LOCK_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(90);
+    // index properties of ScaleoutSession by slot, resolved once
+    private static final Method[] INDEX_METHODS = indexMethods();
+    private static final Map<String, Integer> INDEX_SLOTS = indexSlots();
+
+    private final Stripe[] _stripes;
+    private final int _stripeMask;
+    private final long _tickNanos;
+    private final long _startNanos;
+    private final AtomicLong _tickets = new AtomicLong();
+    // keys by value, one map per index slot
+    private final List<ConcurrentHashMap<String, Set<String>>> _indexes;
+    private final Thread _reaper;
+    private volatile boolean _running = true;
+
+    /**
+     * Instantiates the store with {@link #DEF_STRIPES} stripes and a timer wheel resolution of {@link #DEF_TICK}.
+     */
+    public EmbeddedSessionStore() {
+        this(DEF_STRIPES, DEF_TICK);
+    }
+
+    /**
+     * Instantiates the store.
+     * @param stripes the number of stripes, rounded up to a power of two
+     * @param tick the resolution of the expiration timer wheel
+     */
+    public EmbeddedSessionStore(int stripes, Duration tick) {
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        _stripes = new Stripe[size];
+        for(int i = 0; i < size; i++) {
+            _stripes[i] = new Stripe();
+        }
+        _stripeMask = size - 1;
+        _tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), tick.toNanos());
+        _startNanos = System.nanoTime();
+        _indexes = new ArrayList<>(INDEX_METHODS.length);
+        for(int i = 0; i < INDEX_METHODS.length; i++) {
+            _indexes.add(new ConcurrentHashMap<>());
+        }
+        _reaper = new Thread(this::reap, "embedded-session-store-reaper");
+        _reaper.setDaemon(true);
+        _reaper.start();
+    }
+
+    @Override
+    public Accessor accessor(String key) {
+        return new EmbeddedAccessor(key);
+    }
+
+    @Override
+    public Set<String> queryKeys(String property, String value) {
+        Integer slot = INDEX_SLOTS.get(property);
+        Set<String> keys = new HashSet<>();
+        if(slot == null || value == null) return keys;
+        // copy under the bin lock of the value -- index updates for the value are made under the same lock
+        _indexes.get(slot).computeIfPresent(value, (v, indexed) -> {
+            keys.addAll(indexed);
+            return indexed;
+        });
+        return keys;
+    }
+
+    /**
+     * Stops the expiration thread. Expired objects are no longer removed, but are still not returned.
+     */
+    @Override
+    public void close() {
+        _running = false;
+        _reaper.interrupt();
+        try {
+            _reaper.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Retrieves the number of stored objects, including expired objects that haven't been removed yet.
+     * @return the number of stored objects
+     */
+    public int size() {
+        int size = 0;
+        for(Stripe stripe : _stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.entries.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    // private helper method which finds the stripe of a key
+    private Stripe stripe(String key) {
+        int h = key.hashCode();
+        return _stripes[(h ^ (h >>> 16)) & _stripeMask];
+    }
+
+    // private helper method which converts a nano time to a wheel tick
+    private long tickOf(long nanos) {
+        return (nanos - _startNanos) / _tickNanos;
+    }
+
+    // expiration loop -- advances the wheel of every stripe to the current tick
+    private void reap() {
+        while(_running) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(_tickNanos);
+            } catch (InterruptedException e) {
+                if(!_running) break;
+                continue;
+            }
+            long now = System.nanoTime();
+            long tick = tickOf(now);
+            for(Stripe stripe : _stripes) {
+                stripe.lock.lock();
+                try {
+                    while(stripe.processedTick < tick) {
+                        stripe.processedTick++;
+                        expire(stripe, stripe.processedTick, now);
+                    }
+                } catch (RuntimeException e) {
+                    logger.error("Exception thrown expiring objects.", e);
+                } finally {
+                    stripe.lock.unlock();
+                }
+            }
+        }
+    }
+
+    // private helper method which removes the expired objects of a wheel slot and reschedules the others -- the
+    // caller holds the stripe lock
+    private void expire(Stripe stripe, long tick, long now) {
+        int slot = (int) (tick & (WHEEL_SLOTS - 1));
+        List<Entry> due = stripe.wheel.set(slot, null);
+        if(due == null) return;
+        for(Entry entry : due) {
+            if(entry.removed) continue;
+            if(entry.isExpired(now)) {
+                remove(stripe, entry);
+            } else {
+                schedule(stripe, entry);
+            }
+        }
+    }
+
+    // private helper method which schedules an object in the slot of its expiration tick, or the last slot of the
+    // wheel if it expires later -- the caller holds the stripe lock
+    private void schedule(Stripe stripe, Entry entry) {
+        long tick = Math.min(Math.max(tickOf(entry.expiresAt) + 1, stripe.processedTick + 1), stripe.processedTick + WHEEL_SLOTS);
+        int slot = (int) (tick & (WHEEL_SLOTS - 1));
+        List<Entry> entries = stripe.wheel.get(slot);
+        if(entries == null) {
+            entries = new ArrayList<>();
+            stripe.wheel.set(slot, entries);
+        }
+        entries.add(entry);
+    }
+
+    // private helper method which removes an object and its index values -- the caller holds the stripe lock
+    private void remove(Stripe stripe, Entry entry) {
+        entry.removed = true;
+        stripe.entries.remove(entry.key, entry);
+        reindex(entry.key, entry.index, null);
+    }
+
+    // private helper method which moves a key from its old to its new index values
+    private void reindex(String key, String[] oldValues, String[] newValues) {
+        for(int slot = 0; slot < _indexes.size(); slot++) {
+            String oldValue = oldValues != null ? oldValues[slot] : null;
+            String newValue = newValues != null ? newValues[slot] : null;
+            if(oldValue != null && oldValue.equals(newValue)) continue;
+            if(oldValue != null) {
+                _indexes.get(slot).computeIfPresent(oldValue, (v, keys) -> {
+                    keys.remove(key);
+                    return keys.isEmpty() ? null : keys;
+                });
+            }
+            if(newValue != null) {
+                _indexes.get(slot).compute(newValue, (v, keys) -> {
+                    Set<String> updated = keys != null ? keys : new HashSet<>();
+                    updated.add(key);
+                    return updated;
+                });
+            }
+        }
+    }
+
+    private static byte[] serialize(Object value) throws SessionStoreException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(value);
+        } catch (IOException e) {
+            throw new SessionStoreException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws SessionStoreException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SessionStoreException(e);
+        }
+    }
+
+    // private helper method which resolves the index values of a stored object by slot, or null if it isn't a session
+    private static String[] index(Object value) {
+        if(!(value instanceof ScaleoutSession)) return null;
+        String[] values = new String[INDEX_METHODS.length];
+        for(int slot = 0; slot < INDEX_METHODS.length; slot++) {
+            try {
+                Object property = INDEX_METHODS[slot].invoke(value);
+                values[slot] = property != null ? property.toString() : null;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return values;
+    }
+
+    private static Method[] indexMethods() {
+        List<Method> methods = new ArrayList<>();
+        for(Method method : ScaleoutSession.class.getMethods()) {
+            if(method.isAnnotationPresent(SossIndexAttribute.class) && method.getParameterCount() == 0) {
+                methods.add(method);
+            }
+        }
+        return methods.toArray(new Method[0]);
+    }
+
+    private static Map<String, Integer> indexSlots() {
+        Map<String, Integer> slots = new HashMap<>();
+        for(int slot = 0; slot < INDEX_METHODS.length; slot++) {
+            slots.put(INDEX_METHODS[slot].getName(), slot);
+        }
+        return slots;
+    }
+
+    /**
+     * A stripe of the store -- its objects and expiration wheel, guarded by its lock.
+     */
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final HashMap<String, Entry> entries = new HashMap<>();
+        // entries by slot, null for empty slots
+        private final List<List<Entry>> wheel = new ArrayList<>(Collections.nCopies(WHEEL_SLOTS, null));
+        private long processedTick;
+    }
+
+    /**
+     * A stored object. Guarded by the lock of its stripe.
+     */
+    private static final class Entry {
+        private final String key;
+        private final long timeoutNanos;
+        private byte[] bytes;
+        private Object cached;
+        private String[] index;
+        private long expiresAt;
+        private long lockTicket;
+        private long lockedAt;
+        private boolean removed;
+
+        Entry(String key, Duration timeout, byte[] bytes, String[] index, long now) {
+            this.key = key;
+            this.timeoutNanos = timeout.toNanos();
+            this.bytes = bytes;
+            this.index = index;
+            touch(now);
+        }
+
+        void touch(long now) {
+            expiresAt = now + timeoutNanos;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+
+        boolean isLockedByOther(long ticket, long now) {
+            return lockTicket != 0 && lockTicket != ticket && now - lockedAt < LOCK_TIMEOUT_NANOS;
+        }
+    }
+
+    /**
+     * An accessor holding the lock ticket of one object.
+     */
+    private final class EmbeddedAccessor implements Accessor {
+        private final String _key;
+        private final Stripe _stripe;
+        private boolean _lockedWhenReading;
+        private long _ticket;
+
+        EmbeddedAccessor(String key) {
+            _key = key;
+            _stripe = stripe(key);
+        }
+
+        @Override
+        public void setLockedWhenReading(boolean lockedWhenReading) {
+            _lockedWhenReading = lockedWhenReading;
+        }
+
+        @Override
+        public Object read(Set<ReadOption> options) throws SessionStoreException {
+            boolean useCached = options.contains(ReadOption.RETURN_CACHED_OBJECT_IF_VALID);
+            Entry entry;
+            byte[] bytes;
+            _stripe.lock.lock();
+            try {
+                long now = System.nanoTime();
+                entry = _stripe.entries.get(_key);
+                if(entry != null && entry.isExpired(now)) {
+                    remove(_stripe, entry);
+                    entry = null;
+                }
+                if(entry == null) {
+                    if(options.contains(ReadOption.OBJECT_MAY_NOT_EXIST)) return null;
+                    throw new SessionStoreException("Object " + _key + " not found.");
+                }
+                if(_lockedWhenReading && options.contains(ReadOption.LOCK_OBJECT)) {
+                    if(entry.isLockedByOther(_ticket, now)) {
+                        throw new SessionStoreException.Locked("Object " + _key + " is locked.");
+                    }
+                    _ticket = _tickets.incrementAndGet();
+                    entry.lockTicket = _ticket;
+                    entry.lockedAt = now;
+                }
+                entry.touch(now);
+                if(useCached && entry.cached != null) {
+                    return entry.cached;
+                }
+                bytes = entry.bytes;
+            } finally {
+                _stripe.lock.unlock();
+            }
+            // deserialize outside the stripe lock, then publish the instance if the object is unchanged
+            Object value = deserialize(bytes);
+            if(useCached) {
+                _stripe.lock.lock();
+                try {
+                    if(entry.bytes == bytes) {
+                        entry.cached = value;
+                    }
+                } finally {
+                    _stripe.lock.unlock();
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public void create(Duration timeout, Object value) throws SessionStoreException {
+            byte[] bytes = serialize(value);
+            String[] index = index(value);
+            _stripe.lock.lock();
+            try {
+                long now = System.nanoTime();
+                Entry current = _stripe.entries.get(_key);
+                if(current != null) {
+                    if(!current.isExpired(now)) {
+                        throw new SessionStoreException.Exists("Object " + _key + " exists.");
+                    }
+                    remove(_stripe, current);
+                }
+                Entry created = new Entry(_key, timeout, bytes, index, now);
+                _stripe.entries.put(_key, created);
+                reindex(_key, null, index);
+                schedule(_stripe, created);
+            } finally {
+                _stripe.lock.unlock();
+            }
+        }
+
+        @Override
+        public void update(Object value, boolean unlock) throws SessionStoreException {
+            byte[] bytes = serialize(value);
+            String[] index = index(value);
+            _stripe.lock.lock();
+            try {
+                long now = System.nanoTime();
+                Entry entry = _stripe.entries.get(_key);
+                if(entry == null || entry.isExpired(now)) {
+                    throw new SessionStoreException("Object " + _key + " not found.");
+                }
+                if(entry.isLockedByOther(_ticket, now)) {
+                    throw new SessionStoreException.Locked("Object " + _key + " is locked.");
+                }
+                reindex(_key, entry.index, index);
+                entry.bytes = bytes;
+                entry.cached = null;
+                entry.index = index;
+                entry.touch(now);
+                if(unlock) {
+                    entry.lockTicket = 0;
+                    _ticket = 0;
+                }
+            } finally {
+                _stripe.lock.unlock();
+            }
+        }
+
+        @Override
+        public void delete() throws SessionStoreException {
+            _stripe.lock.lock();
+            try {
+                Entry entry = _stripe.entries.get(_key);
+                if(entry == null) return;
+                if(entry.isLockedByOther(_ticket, System.nanoTime())) {
+                    throw new SessionStoreException.Locked("Object " + _key + " is locked.");
+                }
+                remove(_stripe, entry);
+                _ticket = 0;
+            } finally {
+                _stripe.lock.unlock();
+            }
+        }
+
+        @Override
+        public void releaseLock() {
+            _stripe.lock.lock();
+            try {
+                Entry entry = _stripe.entries.get(_key);
+                if(entry != null && entry.lockTicket == _ticket) {
+                    entry.lockTicket = 0;
+                }
+                _ticket = 0;
+            } finally {
+                _stripe.lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import com.scaleoutsoftware.soss.client.query.Filter;
+
+import java.util.Set;
+
+/**
+ * Package private {@link SessionStore} that also evaluates ScaleOut StateServer query filters. Filter queries are
+ * optional: {@link ScaleoutSessionRepository#deleteAll(Filter)} deletes nothing on stores that don't implement this
+ * interface.
+ */
+interface FilterableSessionStore extends SessionStore {
+
+    /**
+     * Retrieves the keys of the sessions matching a query filter.
+     * @param filter the query filter
+     * @return the matching keys
+     * @throws SessionStoreException if the query failed
+     */
+    Set<String> queryKeys(Filter filter) throws SessionStoreException;
+}
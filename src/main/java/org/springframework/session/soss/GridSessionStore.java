@@ -0,0 +1,266 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import com.scaleoutsoftware.soss.client.*;
+import com.scaleoutsoftware.soss.client.da.DataAccessor;
+import com.scaleoutsoftware.soss.client.da.ReadOptions;
+import com.scaleoutsoftware.soss.client.da.ReadResult;
+import com.scaleoutsoftware.soss.client.da.StateServerResult;
+import com.scaleoutsoftware.soss.client.query.EqualFilter;
+import com.scaleoutsoftware.soss.client.query.Filter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Package private {@link SessionStore} backed by ScaleOut StateServer. Objects are accessed through DataAccessors
+ * keyed by the SHA-256 hash of the key string and queried through the NamedCache of the same name, which also
+ * evaluates query filters.
+ */
+class GridSessionStore implements FilterableSessionStore {
+    private static final Log logger = LogFactory.getLog(GridSessionStore.class);
+
+    private final NamedCache _cache;
+    private final boolean _useRemoteStore;
+    // create policies by timeout in whole minutes -- a repository uses one or two timeouts, plus the remaining times
+    // to live of imported sessions
+    private final ConcurrentHashMap<Duration, CreatePolicy> _createPolicies = new ConcurrentHashMap<>();
+
+    /**
+     * Connects to the store -- creates the NamedCache, sets the default app id used for DataAccessor keys and
+     * configures the remote store.
+     * @param cacheName the cache name
+     * @param remoteStoreName the name of the GeoServer remote store, or null
+     * @throws RuntimeException if the connection failed
+     */
+    GridSessionStore(String cacheName, String remoteStoreName) {
+        _useRemoteStore = remoteStoreName != null;
+        try {
+            _cache = CacheFactory.getCache(cacheName);
+            StateServerKey.setDefaultAppId(StateServerKey.appNameToId(cacheName));
+            if(_useRemoteStore) {
+                List<RemoteStore> stores = new LinkedList<>();
+                stores.add(new RemoteStore(remoteStoreName));
+                _cache.setRemoteStores(stores);
+            }
+        } catch (StateServerException e) {
+            logger.error("Couldn't create namespace.");
+            throw new RuntimeException(e);
+        } catch (NamedCacheException e) {
+            logger.error("Couldn't create NamedCache.");
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Accessor accessor(String key) throws SessionStoreException {
+        try {
+            StateServerKey ssKey = new StateServerKey(hashStringKey(key));
+            ssKey.setKeyString(key);
+            return new GridAccessor(new DataAccessor(ssKey));
+        } catch (StateServerException e) {
+            throw new SessionStoreException(e);
+        }
+    }
+
+    @Override
+    public Set<String> queryKeys(String property, String value) throws SessionStoreException {
+        return queryKeys(new EqualFilter(property, value));
+    }
+
+    @Override
+    public Set<String> queryKeys(Filter filter) throws SessionStoreException {
+        try {
+            Set<CachedObjectId<ScaleoutSession>> ids = _cache.queryKeys(ScaleoutSession.class, filter);
+            Set<String> keys = new HashSet<>();
+            if(ids != null) {
+                for(CachedObjectId<ScaleoutSession> id : ids) {
+                    keys.add(id.getKeyString());
+                }
+            }
+            return keys;
+        } catch (NamedCacheException e) {
+            throw new SessionStoreException(e);
+        }
+    }
+
+    // private helper method to create a create policy with the parameter timeout (rounded up to whole minutes, at
+    // least one)
+    private CreatePolicy createPolicy(Duration timeout) {
+        long minutes = Math.max(1, (timeout.getSeconds() + 59) / 60);
+        return _createPolicies.computeIfAbsent(Duration.ofMinutes(minutes), t -> {
+            CreatePolicy policy = new CreatePolicy();
+            policy.setTimeout(TimeSpan.fromMinutes(t.toMinutes()));
+            if(_useRemoteStore) {
+                policy.setDefaultCoherencyPolicy(new NotifyCoherencyPolicy());
+            }
+            return policy;
+        });
+    }
+
+    // private helper method to hash a string to a 32-byte key
+    private static byte[] hashStringKey(String id) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(id.getBytes());
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    // private helper method to map the store's read options to the DataAccessor's
+    private static Set<ReadOptions> toReadOptions(Set<ReadOption> options) {
+        Set<ReadOptions> readOptions = EnumSet.noneOf(ReadOptions.class);
+        for(ReadOption option : options) {
+            switch(option) {
+                case OBJECT_MAY_NOT_EXIST:
+                    readOptions.add(ReadOptions.ObjectMayNotExist);
+                    break;
+                case LOCK_OBJECT:
+                    readOptions.add(ReadOptions.LockObject);
+                    break;
+                case RETURN_CACHED_OBJECT_IF_VALID:
+                    readOptions.add(ReadOptions.ReturnCachedObjectIfValid);
+                    break;
+                case READ_REMOTE_OBJECT:
+                    readOptions.add(ReadOptions.ReadRemoteObject);
+                    break;
+            }
+        }
+        return readOptions;
+    }
+
+    // private helper to extract an object from a DA read result
+    private static Object retrieveObjectFromReadResult(ReadResult result) throws IOException, ClassNotFoundException {
+        Object obj = null;
+        byte[] serialized = null;
+        if(result != null) {
+            if(result.getStatus() != StateServerResult.Success) {
+                return null;
+            } else if(result.isCachedObjectValid()) {
+                obj = result.getCachedObject();
+            } else {
+                serialized = result.getBytes();
+            }
+        }
+        if (obj != null || serialized == null) {
+            return obj;
+        }
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serialized));
+        obj = ois.readObject();
+        ois.close();
+        return obj;
+    }
+
+    /**
+     * An accessor wrapping a DataAccessor, which holds the lock ticket.
+     */
+    private class GridAccessor implements Accessor {
+        private final DataAccessor _da;
+        private boolean _lockedWhenReading;
+
+        GridAccessor(DataAccessor da) {
+            _da = da;
+        }
+
+        @Override
+        public void setLockedWhenReading(boolean lockedWhenReading) {
+            _lockedWhenReading = lockedWhenReading;
+            _da.setLockedWhenReading(lockedWhenReading);
+        }
+
+        @Override
+        public Object read(Set<ReadOption> options) throws SessionStoreException {
+            ReadResult result;
+            try {
+                result = _da.read(toReadOptions(options));
+            } catch (ObjectLockedException e) {
+                throw new SessionStoreException.Locked(e);
+            } catch (ReadThroughPendingException e) {
+                throw new SessionStoreException.ReadPending(e);
+            } catch (StateServerException e) {
+                throw new SessionStoreException(e);
+            }
+            try {
+                return retrieveObjectFromReadResult(result);
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                // the object is locked if the read locked it -- release the lock, nobody can update the object
+                if(_lockedWhenReading && options.contains(ReadOption.LOCK_OBJECT)) {
+                    try {
+                        _da.releaseLock();
+                    } catch (StateServerException le) {
+                        logger.warn(le);
+                    }
+                }
+                throw new SessionStoreException(e);
+            }
+        }
+
+        @Override
+        public void create(Duration timeout, Object value) throws SessionStoreException {
+            try {
+                _da.create(createPolicy(timeout), value);
+            } catch (ObjectExistsException e) {
+                throw new SessionStoreException.Exists(e);
+            } catch (StateServerException e) {
+                throw new SessionStoreException(e);
+            }
+        }
+
+        @Override
+        public void update(Object value, boolean unlock) throws SessionStoreException {
+            try {
+                _da.update(value, unlock);
+            } catch (ObjectLockedException e) {
+                throw new SessionStoreException.Locked(e);
+            } catch (StateServerException e) {
+                throw new SessionStoreException(e);
+            }
+        }
+
+        @Override
+        public void delete() throws SessionStoreException {
+            try {
+                _da.delete();
+            } catch (StateServerException e) {
+                throw new SessionStoreException(e);
+            }
+        }
+
+        @Override
+        public void releaseLock() throws SessionStoreException {
+            try {
+                _da.releaseLock();
+            } catch (StateServerException e) {
+                throw new SessionStoreException(e);
+            }
+        }
+    }
+}
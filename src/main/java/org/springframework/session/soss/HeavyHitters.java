@@ -0,0 +1,163 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Package private fixed-memory heavy-hitters sketch based on the Space-Saving algorithm, over a sliding window. Keys
+ * are spread over stripes by hash and each stripe is an independent summary with its own lock, so concurrent adds
+ * rarely contend. A stripe tracks at most capacity/stripes keys per window; a new key replaces the key with the
+ * smallest count and inherits that count as its error bound, so any key whose true weight exceeds the stripe's
+ * total/capacity is guaranteed to be tracked. Counts cover the current and the previous window -- older weight is
+ * dropped, so keys that cooled down leave the top.
+ */
+class HeavyHitters {
+    /**
+     * Number of independently locked stripes.
+     */
+    static final int DEF_STRIPES = 8;
+
+    private final Stripe[] _stripes;
+    private final int _stripeCapacity;
+    private final long _windowNanos;
+    private final LongSupplier _nanoClock;
+
+    HeavyHitters(int capacity, Duration window) {
+        this(capacity, DEF_STRIPES, window, System::nanoTime);
+    }
+
+    // package private constructor with the clock, for tests
+    HeavyHitters(int capacity, int stripes, Duration window, LongSupplier nanoClock) {
+        _stripes = new Stripe[stripes];
+        for(int i = 0; i < stripes; i++) {
+            _stripes[i] = new Stripe();
+        }
+        _stripeCapacity = Math.max(1, (capacity + stripes - 1) / stripes);
+        _windowNanos = window.toNanos();
+        _nanoClock = nanoClock;
+    }
+
+    /**
+     * Adds weight to a key.
+     * @param key the key
+     * @param weight the weight, ignored if not positive
+     */
+    void add(String key, long weight) {
+        if(weight <= 0) return;
+        long window = Math.floorDiv(_nanoClock.getAsLong(), _windowNanos);
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.roll(window);
+            stripe.add(key, weight, _stripeCapacity);
+        }
+    }
+
+    /**
+     * Retrieves the keys with the largest counts over the current and the previous window, in descending order.
+     * Counts may overestimate the true weight by at most the error bound of the key.
+     * @param n the maximum number of keys
+     * @return the keys and their counts
+     */
+    Map<String, Long> top(int n) {
+        long window = Math.floorDiv(_nanoClock.getAsLong(), _windowNanos);
+        List<Map.Entry<String, Long>> entries = new ArrayList<>();
+        for(Stripe stripe : _stripes) {
+            synchronized (stripe) {
+                stripe.roll(window);
+                entries.addAll(stripe.counts().entrySet());
+            }
+        }
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        Map<String, Long> top = new LinkedHashMap<>();
+        for(int i = 0; i < entries.size() && i < n; i++) {
+            top.put(entries.get(i).getKey(), entries.get(i).getValue());
+        }
+        return top;
+    }
+
+    /**
+     * Retrieves the time covered by the counts, i.e. the previous window and the elapsed part of the current one.
+     * @return the covered time in ns
+     */
+    long coveredNanos() {
+        return _windowNanos + Math.floorMod(_nanoClock.getAsLong(), _windowNanos);
+    }
+
+    void clear() {
+        for(Stripe stripe : _stripes) {
+            synchronized (stripe) {
+                stripe.current.clear();
+                stripe.previous.clear();
+            }
+        }
+    }
+
+    // private helper method to select the stripe of a key
+    private Stripe stripe(String key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return _stripes[Math.floorMod(hash, _stripes.length)];
+    }
+
+    // the Space-Saving summary of one stripe, for the current and the previous window
+    private static final class Stripe {
+        // key to {count, error}
+        private HashMap<String, long[]> current = new HashMap<>();
+        private HashMap<String, long[]> previous = new HashMap<>();
+        private long window = Long.MIN_VALUE;
+
+        // moves to the parameter window, keeping the counts of the window before it
+        void roll(long now) {
+            if(now == window) return;
+            previous = now - 1 == window ? current : new HashMap<>();
+            current = new HashMap<>();
+            window = now;
+        }
+
+        void add(String key, long weight, int capacity) {
+            long[] counter = current.get(key);
+            if(counter != null) {
+                counter[0] += weight;
+                return;
+            }
+            if(current.size() < capacity) {
+                current.put(key, new long[] { weight, 0 });
+                return;
+            }
+            // replace the key with the smallest count
+            String minKey = null;
+            long min = Long.MAX_VALUE;
+            for(Map.Entry<String, long[]> entry : current.entrySet()) {
+                if(entry.getValue()[0] < min) {
+                    min = entry.getValue()[0];
+                    minKey = entry.getKey();
+                }
+            }
+            current.remove(minKey);
+            current.put(key, new long[] { min + weight, min });
+        }
+
+        Map<String, Long> counts() {
+            Map<String, Long> counts = new HashMap<>();
+            previous.forEach((key, counter) -> counts.put(key, counter[0]));
+            current.forEach((key, counter) -> counts.merge(key, counter[0], Long::sum));
+            return counts;
+        }
+    }
+}
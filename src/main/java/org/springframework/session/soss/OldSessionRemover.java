@@ -0,0 +1,173 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Package private background pipeline that deletes session identifiers retired by
+ * {@link ScaleoutSession#changeSessionId()}. Old identifiers are queued by the request thread, which has already
+ * released their locks, and removed from the store in batches by a single daemon thread. Failed deletes are retried
+ * with a linear backoff.
+ */
+class OldSessionRemover {
+    private static final Log logger = LogFactory.getLog(OldSessionRemover.class);
+
+    /**
+     * Maximum number of old sessions removed per batch.
+     */
+    static final int DEF_BATCH_SIZE = 64;
+    /**
+     * Maximum number of delete attempts for a single old session.
+     */
+    static final int DEF_MAX_ATTEMPTS = 5;
+    /**
+     * Backoff in milliseconds between delete attempts, multiplied by the attempt number.
+     */
+    static final long DEF_RETRY_BACKOFF_MS = 250;
+
+    /**
+     * Callback used to delete a single old session.
+     */
+    interface RemovalAction {
+        void remove(String id) throws SessionStoreException;
+    }
+
+    private final RemovalAction _action;
+    private final DelayQueue<PendingRemoval> _queue;
+    private final Set<String> _pendingIds;
+    private final Thread _worker;
+    private volatile boolean _running;
+
+    OldSessionRemover(String name, RemovalAction action) {
+        _action = action;
+        _queue = new DelayQueue<>();
+        _pendingIds = ConcurrentHashMap.newKeySet();
+        _running = true;
+        _worker = new Thread(this::run, name + "-old-session-remover");
+        _worker.setDaemon(true);
+        _worker.start();
+    }
+
+    /**
+     * Queues an old session id for removal.
+     * @param id the old session id
+     */
+    void enqueue(String id) {
+        if(id == null) return;
+        _pendingIds.add(id);
+        _queue.add(new PendingRemoval(id, 0));
+    }
+
+    /**
+     * Returns true if the id has been retired but not yet removed from the store.
+     * @param id the session id
+     * @return true if removal of the id is pending
+     */
+    boolean isPending(String id) {
+        return id != null && _pendingIds.contains(id);
+    }
+
+    /**
+     * Stops the background thread and makes a final attempt to remove all queued sessions on the calling thread.
+     */
+    void shutdown() {
+        _running = false;
+        _worker.interrupt();
+        try {
+            _worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingRemoval> remaining = new ArrayList<>(_queue);
+        _queue.clear();
+        for(PendingRemoval removal : remaining) {
+            try {
+                _action.remove(removal.id);
+            } catch (Exception e) {
+                logger.warn("Could not remove old session during shutdown.", e);
+            } finally {
+                _pendingIds.remove(removal.id);
+            }
+        }
+    }
+
+    // worker loop -- blocks until at least one removal is due, then drains whatever else is due into the same batch
+    private void run() {
+        List<PendingRemoval> batch = new ArrayList<>(DEF_BATCH_SIZE);
+        while(_running) {
+            try {
+                batch.add(_queue.take());
+                _queue.drainTo(batch, DEF_BATCH_SIZE - 1);
+            } catch (InterruptedException e) {
+                if(!_running) break;
+                continue;
+            }
+            for(PendingRemoval removal : batch) {
+                process(removal);
+            }
+            batch.clear();
+        }
+    }
+
+    private void process(PendingRemoval removal) {
+        try {
+            _action.remove(removal.id);
+            _pendingIds.remove(removal.id);
+        } catch (Exception e) {
+            int attempts = removal.attempts + 1;
+            if(attempts >= DEF_MAX_ATTEMPTS) {
+                logger.error("Giving up removing old session after " + attempts + " attempts.", e);
+                _pendingIds.remove(removal.id);
+            } else {
+                logger.warn("Exception thrown while removing old session, retrying.", e);
+                _queue.add(new PendingRemoval(removal.id, attempts));
+            }
+        }
+    }
+
+    // a queued removal, delayed according to the number of failed attempts
+    private static class PendingRemoval implements Delayed {
+        private final String id;
+        private final int attempts;
+        private final long dueNanos;
+
+        PendingRemoval(String id, int attempts) {
+            this.id = id;
+            this.attempts = attempts;
+            this.dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DEF_RETRY_BACKOFF_MS * attempts);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), o.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
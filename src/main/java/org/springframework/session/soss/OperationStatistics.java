@@ -0,0 +1,95 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Package private counters for the operations performed by the {@link ScaleoutSessionRepository}. Recording an
+ * operation is lock-free so the statistics can stay enabled in production.
+ */
+class OperationStatistics {
+
+    /**
+     * The repository operations that are measured.
+     */
+    enum Operation { FIND, SAVE, DELETE, QUERY }
+
+    private final Map<Operation, Counter> _counters = new EnumMap<>(Operation.class);
+
+    OperationStatistics() {
+        for(Operation operation : Operation.values()) {
+            _counters.put(operation, new Counter());
+        }
+    }
+
+    /**
+     * Records a completed operation.
+     * @param operation the operation
+     * @param startNanos the {@link System#nanoTime()} when the operation started
+     */
+    void record(Operation operation, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        Counter counter = _counters.get(operation);
+        counter.count.increment();
+        counter.totalNanos.add(elapsed);
+        counter.maxNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    Map<String, Long> counts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        _counters.forEach((operation, counter) -> counts.put(operation.name(), counter.count.sum()));
+        return counts;
+    }
+
+    Map<String, Double> averageMillis() {
+        Map<String, Double> averages = new LinkedHashMap<>();
+        _counters.forEach((operation, counter) -> {
+            long count = counter.count.sum();
+            averages.put(operation.name(), count == 0 ? 0.0 : toMillis(counter.totalNanos.sum()) / count);
+        });
+        return averages;
+    }
+
+    Map<String, Double> maxMillis() {
+        Map<String, Double> max = new LinkedHashMap<>();
+        _counters.forEach((operation, counter) -> max.put(operation.name(), toMillis(counter.maxNanos.get())));
+        return max;
+    }
+
+    void reset() {
+        for(Counter counter : _counters.values()) {
+            counter.count.reset();
+            counter.totalNanos.reset();
+            counter.maxNanos.set(0);
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static class Counter {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+    }
+}
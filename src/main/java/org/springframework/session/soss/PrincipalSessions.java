@@ -0,0 +1,97 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Package private metadata about all sessions of a single principal. One instance per principal is stored by the
+ * {@link ScaleoutSessionRegistry}, so that counting and sorting the sessions of a principal takes a single small read
+ * rather than loading every {@link ScaleoutSession}.
+ */
+class PrincipalSessions implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // session id to session metadata
+    private final HashMap<String, Entry> _sessions = new HashMap<>();
+
+    Map<String, Entry> sessions() {
+        return _sessions;
+    }
+
+    void register(String sessionId, Instant lastRequest) {
+        _sessions.put(sessionId, new Entry(lastRequest.toEpochMilli(), false));
+    }
+
+    void remove(String sessionId) {
+        _sessions.remove(sessionId);
+    }
+
+    void refresh(String sessionId, Instant lastRequest) {
+        Entry entry = _sessions.get(sessionId);
+        if(entry != null) {
+            entry.lastRequest = Math.max(entry.lastRequest, lastRequest.toEpochMilli());
+        }
+    }
+
+    void expire(String sessionId) {
+        Entry entry = _sessions.get(sessionId);
+        if(entry != null) {
+            entry.expired = true;
+        }
+    }
+
+    void rename(String oldId, String newId) {
+        Entry entry = _sessions.remove(oldId);
+        if(entry != null) {
+            _sessions.put(newId, entry);
+        }
+    }
+
+    /**
+     * Removes sessions that have not been requested within the parameter inactive time. These sessions have timed out
+     * in the store without being deleted through the repository.
+     * @param now the current time
+     * @param maxInactiveTime the max inactive time of sessions
+     */
+    void prune(Instant now, Duration maxInactiveTime) {
+        long oldest = now.minus(maxInactiveTime).toEpochMilli();
+        _sessions.values().removeIf(entry -> entry.lastRequest < oldest);
+    }
+
+    boolean isEmpty() {
+        return _sessions.isEmpty();
+    }
+
+    /**
+     * Metadata of a single session.
+     */
+    static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        long lastRequest;
+        boolean expired;
+
+        Entry(long lastRequest, boolean expired) {
+            this.lastRequest = lastRequest;
+            this.expired = expired;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Package private {@link ScaleoutSessionRepositoryMXBean} implementation which delegates to a
+ * {@link ScaleoutSessionRepository}.
+ */
+class RepositoryManagement implements ScaleoutSessionRepositoryMXBean {
+    private final ScaleoutSessionRepository _repository;
+
+    RepositoryManagement(ScaleoutSessionRepository repository) {
+        _repository = repository;
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        return _repository.statistics().counts();
+    }
+
+    @Override
+    public Map<String, Double> getAverageLatencyMillis() {
+        return _repository.statistics().averageMillis();
+    }
+
+    @Override
+    public Map<String, Double> getMaxLatencyMillis() {
+        return _repository.statistics().maxMillis();
+    }
+
+    @Override
+    public void resetStatistics() {
+        _repository.statistics().reset();
+    }
+
+    @Override
+    public Map<String, Double> getHotSessionsByAccessRate() {
+        return _repository.profiler().topAccessRates();
+    }
+
+    @Override
+    public Map<String, Long> getHotSessionsByLockWaitMillis() {
+        return _repository.profiler().topLockWaitMillis();
+    }
+
+    @Override
+    public Map<String, Long> getHotSessionsByLockRetries() {
+        return _repository.profiler().topLockRetries();
+    }
+
+    @Override
+    public void resetProfiler() {
+        _repository.profiler().reset();
+    }
+
+    @Override
+    public List<AttributeSizeStatistics> getAttributeSizeStatistics() {
+        return _repository.sizeAnalyzer().statistics();
+    }
+
+    @Override
+    public void resetAttributeSizeStatistics() {
+        _repository.sizeAnalyzer().reset();
+    }
+
+    @Override
+    public Map<String, Long> getLockedSessions() {
+        return _repository.lockedSessions();
+    }
+
+    @Override
+    public int getLockedSessionCount() {
+        return _repository.lockedSessionCount();
+    }
+
+    @Override
+    public boolean releaseLock(String sessionId) {
+        return sessionId != null && (_repository.forceReleaseLock(sessionId) || _repository.forceReleaseRedactedLock(sessionId));
+    }
+
+    @Override
+    public int releaseLocksHeldLongerThan(long millis) {
+        return _repository.forceReleaseLocks(millis);
+    }
+
+    @Override
+    public long getLocalReplicaReads() {
+        return _repository.localReplicaReads();
+    }
+
+    @Override
+    public long getStaleReplicaReads() {
+        return _repository.staleReplicaReads();
+    }
+
+    @Override
+    public long getSharedValueCacheHits() {
+        return _repository.sharedValueCacheHits();
+    }
+
+    @Override
+    public long getSharedValueCacheMisses() {
+        return _repository.sharedValueCacheMisses();
+    }
+
+    @Override
+    public long getRemoteReads() {
+        return _repository.remoteReads();
+    }
+
+    @Override
+    public long getMaxStalenessMillis() {
+        return _repository.maxStalenessMillis();
+    }
+
+    @Override
+    public void setMaxStalenessMillis(long millis) {
+        if(millis < 0) throw new IllegalArgumentException("millis must not be negative");
+        _repository.setMaxStaleness(Duration.ofMillis(millis));
+    }
+
+    @Override
+    public int getRemoteReadPendingRetryInterval() {
+        return _repository.remoteReadPendingRetryInterval();
+    }
+
+    @Override
+    public void setRemoteReadPendingRetryInterval(int interval) {
+        if(interval < 0) throw new IllegalArgumentException("interval must not be negative");
+        _repository.setRemoteReadPendingRetryInterval(interval);
+    }
+
+    @Override
+    public int getMaxRemoteReadRetries() {
+        return _repository.maxRemoteReadRetries();
+    }
+
+    @Override
+    public void setMaxRemoteReadRetries(int retries) {
+        if(retries < 1) throw new IllegalArgumentException("retries must be positive");
+        _repository.setMaxRemoteReadRetries(retries);
+    }
+
+    @Override
+    public int getLockRetryInterval() {
+        return _repository.lockRetryInterval();
+    }
+
+    @Override
+    public void setLockRetryInterval(int interval) {
+        if(interval < 0) throw new IllegalArgumentException("interval must not be negative");
+        _repository.setLockRetryInterval(interval);
+    }
+
+    @Override
+    public long getLockTimeout() {
+        return _repository.lockTimeout();
+    }
+
+    @Override
+    public void setLockTimeout(long timeout) {
+        if(timeout < 0) throw new IllegalArgumentException("timeout must not be negative");
+        _repository.setLockTimeout(timeout);
+    }
+
+    @Override
+    public boolean isStoreReady() {
+        return _repository.isReady();
+    }
+}
@@ -25,6 +25,7 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.TemporalAmount;
 import java.util.*;
+import java.util.function.Function;
 
 
 /**
@@ -34,6 +35,8 @@ import java.util.*;
  */
 public class ScaleoutSession implements Session, Serializable {
 	private static final Log logger = LogFactory.getLog(ScaleoutSessionRepository.class);
+	// pinned to the value computed for the 2.1 release so that sessions stored by older clients remain readable
+	private static final long serialVersionUID = -235528768878286895L;
 
 	/**
 	 * Default inactive time in minutes for a session.
@@ -47,14 +50,44 @@ public class ScaleoutSession implements Session, Serializable {
 	private Duration _inactiveTime;
 	private HashMap<String, Object> _attributes;
 
+	// set while _attributes is shared with a snapshot -- the map is copied before the first write
+	private transient boolean _sharedAttributes;
+
 	// special session attribute used for query
 	private String _principalNameIndexName;
 
+	/**
+	 * Maximum number of secondary indexes, in addition to the principal name, that can be configured.
+	 */
+	public final static int MAX_SECONDARY_INDEXES = 4;
+
+	// values of the configured secondary indexes, by slot
+	private String[] _indexValues;
+
+	/**
+	 * Number of buckets sessions are spread over by {@link #scanBucket()}, so they can be scanned page by page.
+	 */
+	static final int SCAN_BUCKETS = 256;
+	private static final String[] SCAN_BUCKET_NAMES = new String[SCAN_BUCKETS];
+	static {
+		for(int bucket = 0; bucket < SCAN_BUCKETS; bucket++) {
+			SCAN_BUCKET_NAMES[bucket] = String.format("%02x", bucket);
+		}
+	}
+
 	// these attributes are used to mark a session as new/old
 	// and as a check to see if the session id has changed.
 	private transient LinkedList<String> _oldIds = null;
 	private boolean _isNew;
 
+	// the wall clock time in ms at which the session was last written to the store, by the writer's clock, or 0 if it
+	// was written by a release without this field -- stored with the session, so every replica carries the age of
+	// its content, used to bound the staleness of local replica reads
+	private long _savedAtMillis;
+
+	// set when the session was persisted with the short timeout used for sessions that do not qualify for full persistence
+	private boolean _shortLived;
+
 	/**
 	 * Constructor for a ScaleoutSession.
 	 * @param lastAccessTime the last time the session was retrieved from the ScaleOut StateServer store
@@ -68,6 +101,26 @@ public class ScaleoutSession implements Session, Serializable {
 		 _isNew = true;
 	}
 
+	/**
+	 * Copy-on-write constructor for a ScaleoutSession. The copy shares the attribute map of the snapshot until either
+	 * one writes an attribute. The snapshot must not be modified while copies are in use; attribute values themselves
+	 * are not copied.
+	 * @param snapshot the session to copy
+	 */
+	ScaleoutSession(ScaleoutSession snapshot) {
+		_sessionId = snapshot._sessionId;
+		_lastAccessTime = snapshot._lastAccessTime;
+		_createTime = snapshot._createTime;
+		_inactiveTime = snapshot._inactiveTime;
+		_attributes = snapshot._attributes;
+		_sharedAttributes = true;
+		_principalNameIndexName = snapshot._principalNameIndexName;
+		_indexValues = snapshot._indexValues;
+		_isNew = snapshot._isNew;
+		_savedAtMillis = snapshot._savedAtMillis;
+		_shortLived = snapshot._shortLived;
+	}
+
 	/**
 	 * Retrieves the session identifier.
 	 * @return the session identifier
@@ -109,11 +162,21 @@ public class ScaleoutSession implements Session, Serializable {
 	}
 
 	/**
-	 * Retrieves a set of strings that represent all attribute names stored in this session.
+	 * Retrieves a set of strings that represent all attribute names stored in this session. The set is a copy, so it
+	 * is not affected by later changes to the session and changing it does not change the session.
 	 * @return the collection of attribute names
 	 */
 	public Set<String> getAttributeNames() {
-		return _attributes.keySet();
+		return new HashSet<>(_attributes.keySet());
+	}
+
+	boolean hasAttributes() {
+		return !_attributes.isEmpty();
+	}
+
+	// package private read-only view of the attributes, for iterating them without copying the names
+	Map<String, Object> attributeView() {
+		return Collections.unmodifiableMap(_attributes);
 	}
 
 	/**
@@ -124,7 +187,7 @@ public class ScaleoutSession implements Session, Serializable {
 	 */
 	public void setAttribute(String attributeName, Object attributeValue) {
 		if(attributeName != null && attributeValue != null) {
-			_attributes.put(attributeName, attributeValue);
+			ownAttributes().put(attributeName, attributeValue);
 		} else if(attributeName != null) {
 			removeAttribute(attributeName);
 		}
@@ -135,7 +198,9 @@ public class ScaleoutSession implements Session, Serializable {
 	 * @param attributeName removes the attribute
 	 */
 	public void removeAttribute(String attributeName) {
-		_attributes.remove(attributeName);
+		if(_attributes.containsKey(attributeName)) {
+			ownAttributes().remove(attributeName);
+		}
 	}
 
 	/**
@@ -195,6 +260,44 @@ public class ScaleoutSession implements Session, Serializable {
 		_isNew = false;
 	}
 
+	long savedAtMillis() { return _savedAtMillis; }
+
+	void markSaved() {
+		_savedAtMillis = System.currentTimeMillis();
+	}
+
+	boolean isShortLived() { return _shortLived; }
+
+	void markShortLived(boolean shortLived) {
+		_shortLived = shortLived;
+	}
+
+	/**
+	 * Package private helper method which creates an immutable snapshot of this session, e.g. to hand to the store
+	 * (and its client cache) on save. The snapshot shares the attribute map, so this session copies it before its
+	 * next attribute write.
+	 * @return the snapshot
+	 */
+	ScaleoutSession snapshot() {
+		ScaleoutSession snapshot = new ScaleoutSession(this);
+		_sharedAttributes = true;
+		return snapshot;
+	}
+
+	boolean hasOldIds() {
+		return _oldIds != null;
+	}
+
+	/**
+	 * Package private helper method which retrieves the id the session had before any id changes that were not saved
+	 * yet, i.e. the id the session was read and locked with.
+	 * @return the original session identifier
+	 */
+	String originalId() {
+		LinkedList<String> oldIds = _oldIds;
+		return oldIds != null ? oldIds.getFirst() : _sessionId;
+	}
+
 	/**
 	 * Package private helper method which retrieves the old session identifiers that were previously associated with this session.
 	 * @return old session identifiers
@@ -206,10 +309,34 @@ public class ScaleoutSession implements Session, Serializable {
 	}
 
 	/**
-	 * Package private helper method
+	 * Package private helper method which resolves the principal name and the values of the configured secondary
+	 * indexes.
+	 * @param indexExtractors the extractors of the secondary indexes, in slot order
 	 */
-	void resolveQueryableAttributes() {
-		_principalNameIndexName = ScaleoutSessionRepository.PRINCIPAL_NAME_RESOLVER.resolvePrincipal(this);
+	void resolveQueryableAttributes(List<Function<Session, String>> indexExtractors) {
+		// a failing resolver or extractor leaves its index unset rather than failing the save
+		try {
+			_principalNameIndexName = ScaleoutSessionRepository.PRINCIPAL_NAME_RESOLVER.resolvePrincipal(this);
+		} catch (RuntimeException e) {
+			logger.warn("Error thrown resolving the principal name, the session is not indexed by principal.", e);
+			_principalNameIndexName = null;
+		}
+		if(indexExtractors.isEmpty()) {
+			_indexValues = null;
+		} else {
+			String[] values = new String[indexExtractors.size()];
+			for(int slot = 0; slot < values.length; slot++) {
+				Function<Session, String> extractor = indexExtractors.get(slot);
+				// slots below a pinned slot may be unused
+				if(extractor == null) continue;
+				try {
+					values[slot] = extractor.apply(this);
+				} catch (RuntimeException e) {
+					logger.warn("Error thrown resolving secondary index " + slot + ", the session is not indexed by it.", e);
+				}
+			}
+			_indexValues = values;
+		}
 	}
 
 	/**
@@ -221,6 +348,74 @@ public class ScaleoutSession implements Session, Serializable {
 		return _principalNameIndexName;
 	}
 
+	/**
+	 * Value of the first configured secondary index, set by the session repository.
+	 * @return the value of the first secondary index or null
+	 */
+	@SossIndexAttribute
+	public String secondaryIndex1() {
+		return indexValue(0);
+	}
+
+	/**
+	 * Value of the second configured secondary index, set by the session repository.
+	 * @return the value of the second secondary index or null
+	 */
+	@SossIndexAttribute
+	public String secondaryIndex2() {
+		return indexValue(1);
+	}
+
+	/**
+	 * Value of the third configured secondary index, set by the session repository.
+	 * @return the value of the third secondary index or null
+	 */
+	@SossIndexAttribute
+	public String secondaryIndex3() {
+		return indexValue(2);
+	}
+
+	/**
+	 * Value of the fourth configured secondary index, set by the session repository.
+	 * @return the value of the fourth secondary index or null
+	 */
+	@SossIndexAttribute
+	public String secondaryIndex4() {
+		return indexValue(3);
+	}
+
+	// helper method which returns the attribute map for writing, copying it first if it is shared with a snapshot
+	private HashMap<String, Object> ownAttributes() {
+		if(_sharedAttributes) {
+			_attributes = new HashMap<>(_attributes);
+			_sharedAttributes = false;
+		}
+		return _attributes;
+	}
+
+	/**
+	 * The scan bucket of this session, derived from the session id. Used by the session repository to scan sessions
+	 * one bucket at a time.
+	 * @return the scan bucket
+	 */
+	@SossIndexAttribute
+	public String scanBucket() {
+		return scanBucketName(Math.floorMod(_sessionId.hashCode(), SCAN_BUCKETS));
+	}
+
+	/**
+	 * Package private helper method which retrieves the name of a scan bucket.
+	 * @param bucket the bucket number, less than {@link #SCAN_BUCKETS}
+	 * @return the bucket name
+	 */
+	static String scanBucketName(int bucket) {
+		return SCAN_BUCKET_NAMES[bucket];
+	}
+
+	private String indexValue(int slot) {
+		return _indexValues != null && slot < _indexValues.length ? _indexValues[slot] : null;
+	}
+
 	/**
 	 * Helper method to create a new session ID.
 	 * @return a new session identifier
@@ -0,0 +1,399 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.security.core.session.SessionRegistry;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * A Spring Security {@link SessionRegistry} backed by the {@link ScaleoutSessionRepository}. The registry keeps
+ * lightweight metadata (session id, last request time and expired flag) of every session of a principal in a single
+ * object in the ScaleOut StateServer store, and the principal name of every registered session in a small object of
+ * its own. Enforcing concurrent-session limits therefore takes one small read per login instead of querying and
+ * deserializing every session of the principal, and looking up the information of a session never reads the session.
+ *
+ * <p>
+ *     To use the registry, declare it as a bean and hand it to Spring Security's session management:
+ * </p>
+ * <pre>
+ * &#64;Bean
+ * public ScaleoutSessionRegistry sessionRegistry(ScaleoutSessionRepository repository) {
+ *     return new ScaleoutSessionRegistry(repository);
+ * }
+ * </pre>
+ *
+ * <p>
+ *     The last request time of a session is refreshed whenever the repository retrieves the session, whether or not
+ *     Spring Security's ConcurrentSessionFilter calls {@link #refreshLastRequest(String)}. Refreshes are not written on
+ *     the request thread: they are collected and written in the background once per refresh interval, with one write
+ *     per principal. A refresh interval of zero writes every refresh on the calling thread. {@link #shutdown()} writes
+ *     the pending refreshes and stops the background thread.
+ * </p>
+ */
+public class ScaleoutSessionRegistry implements SessionRegistry {
+    private static final Log logger = LogFactory.getLog(ScaleoutSessionRegistry.class);
+
+    /**
+     * Default minimum interval between writes of the last request time of a session.
+     */
+    public static final Duration DEF_REFRESH_INTERVAL = Duration.ofMinutes(1);
+
+    // prefix for the keys of the per-principal metadata objects
+    private static final String KEY_PREFIX = "ScaleoutSessionRegistry:";
+    // prefix for the keys of the session id to principal name objects
+    private static final String SESSION_KEY_PREFIX = "ScaleoutSessionRegistry.session:";
+    // maximum number of session ids this client remembers the principal of
+    private static final int MAX_LOCAL_SESSIONS = 10000;
+
+    private final ScaleoutSessionRepository _repository;
+    private final Duration _refreshInterval;
+    // session id to principal name and last refresh, for sessions seen by this client -- a null principal records
+    // when a session was last found not to be registered
+    private final Map<String, LocalSession> _localSessions;
+    // last request times waiting to be written, by principal name and session id
+    private final ConcurrentHashMap<String, Map<String, Instant>> _pendingRefreshes = new ConcurrentHashMap<>();
+    // writes the pending refreshes, or null if refreshes are written on the calling thread
+    private final ScheduledExecutorService _refresher;
+
+    /**
+     * Instantiates a ScaleoutSessionRegistry with the default refresh interval.
+     * @param repository the repository storing the sessions
+     */
+    public ScaleoutSessionRegistry(ScaleoutSessionRepository repository) {
+        this(repository, DEF_REFRESH_INTERVAL);
+    }
+
+    /**
+     * Instantiates a ScaleoutSessionRegistry.
+     * @param repository the repository storing the sessions
+     * @param refreshInterval the minimum interval between writes of the last request time of a session
+     */
+    public ScaleoutSessionRegistry(ScaleoutSessionRepository repository, Duration refreshInterval) {
+        if(repository == null) throw new IllegalArgumentException("repository must not be null");
+        _repository = repository;
+        _refreshInterval = refreshInterval;
+        _localSessions = Collections.synchronizedMap(new LinkedHashMap<String, LocalSession>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LocalSession> eldest) {
+                return size() > MAX_LOCAL_SESSIONS;
+            }
+        });
+        if(refreshInterval.isZero() || refreshInterval.isNegative()) {
+            _refresher = null;
+        } else {
+            _refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "scaleout-session-registry-refresher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long millis = refreshInterval.toMillis();
+            _refresher.scheduleWithFixedDelay(this::writeRefreshes, millis, millis, TimeUnit.MILLISECONDS);
+        }
+        _repository.addSessionListener(new Listener());
+    }
+
+    /**
+     * Writes the pending last request times and stops the background thread.
+     */
+    public void shutdown() {
+        if(_refresher != null) {
+            _refresher.shutdownNow();
+        }
+        writeRefreshes();
+    }
+
+    /**
+     * Retrieves the names of all principals that have sessions. This is a full scan of the store, see
+     * {@link ScaleoutSessionRepository#scan()}: every session in the store is read and deserialized, so the cost grows
+     * with the number of sessions and this is meant for administrative use rather than for every request.
+     * @return the principal names
+     * @throws IllegalStateException if the sessions couldn't be scanned
+     */
+    @Override
+    public List<Object> getAllPrincipals() {
+        return _repository.scan()
+                .map(ScaleoutSession::principalNameIndexName)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Retrieves the sessions of a principal with a single read of the principal's metadata.
+     * @param principal the principal
+     * @param includeExpiredSessions whether to include sessions that were expired through {@link SessionInformation#expireNow()}
+     * @return the sessions of the principal
+     */
+    @Override
+    public List<SessionInformation> getAllSessions(Object principal, boolean includeExpiredSessions) {
+        String name = name(principal);
+        PrincipalSessions sessions = read(name);
+        if(sessions == null) {
+            return Collections.emptyList();
+        }
+        sessions.prune(Instant.now(), _repository.getMaxInactiveTime());
+        List<SessionInformation> infos = new ArrayList<>(sessions.sessions().size());
+        for(Map.Entry<String, PrincipalSessions.Entry> entry : sessions.sessions().entrySet()) {
+            if(includeExpiredSessions || !entry.getValue().expired) {
+                infos.add(new ScaleoutSessionInformation(this, principal, name, entry.getKey(), entry.getValue()));
+            }
+        }
+        return infos;
+    }
+
+    /**
+     * Retrieves the session information of a session. The principal of a session this client hasn't seen is looked up
+     * in the small object written when the session was registered -- the session itself is not read.
+     * @param sessionId the session id
+     * @return the session information, or null if the session is not registered
+     */
+    @Override
+    public SessionInformation getSessionInformation(String sessionId) {
+        if(sessionId == null) return null;
+        String name = principalOf(sessionId);
+        if(name == null) return null;
+        PrincipalSessions sessions = read(name);
+        PrincipalSessions.Entry entry = sessions != null ? sessions.sessions().get(sessionId) : null;
+        if(entry == null) return null;
+        return new ScaleoutSessionInformation(this, name, name, sessionId, entry);
+    }
+
+    /**
+     * Updates the last request time of a session. The time is written in the background with the other refreshes of
+     * the principal, at most once per refresh interval.
+     * @param sessionId the session id
+     */
+    @Override
+    public void refreshLastRequest(String sessionId) {
+        if(sessionId == null) return;
+        LocalSession local = _localSessions.get(sessionId);
+        if(local == null || local.principal == null) return;
+        Instant now = Instant.now();
+        if(Duration.between(local.lastRefresh, now).compareTo(_refreshInterval) < 0) return;
+        local.lastRefresh = now;
+        if(_refresher == null) {
+            modify(local.principal, sessions -> sessions.refresh(sessionId, now));
+        } else {
+            _pendingRefreshes.compute(local.principal, (name, pending) -> {
+                Map<String, Instant> refreshes = pending != null ? pending : new HashMap<>();
+                refreshes.put(sessionId, now);
+                return refreshes;
+            });
+        }
+    }
+
+    /**
+     * Registers a new session for a principal.
+     * @param sessionId the session id
+     * @param principal the principal
+     */
+    @Override
+    public void registerNewSession(String sessionId, Object principal) {
+        if(sessionId == null || principal == null) return;
+        String name = name(principal);
+        Instant now = Instant.now();
+        _localSessions.put(sessionId, new LocalSession(name, now));
+        _repository.<String>modify(SESSION_KEY_PREFIX + sessionId, current -> name);
+        modify(name, sessions -> sessions.register(sessionId, now));
+    }
+
+    /**
+     * Removes the session information of a session.
+     * @param sessionId the session id
+     */
+    @Override
+    public void removeSessionInformation(String sessionId) {
+        if(sessionId == null) return;
+        String name = principalOf(sessionId);
+        _localSessions.remove(sessionId);
+        if(name != null) {
+            unregister(name, Collections.singletonList(sessionId));
+        }
+    }
+
+    // private helper method to resolve the principal name of a session -- the session id to principal object is read
+    // if the session is not known locally, or was found not to be registered more than a refresh interval ago
+    private String principalOf(String sessionId) {
+        LocalSession local = _localSessions.get(sessionId);
+        Instant now = Instant.now();
+        if(local != null && (local.principal != null || Duration.between(local.lastRefresh, now).compareTo(_refreshInterval) < 0)) {
+            return local.principal;
+        }
+        Object name = _repository.peek(SESSION_KEY_PREFIX + sessionId);
+        if(name instanceof String) {
+            _localSessions.put(sessionId, new LocalSession((String) name, Instant.EPOCH));
+            return (String) name;
+        }
+        _localSessions.put(sessionId, new LocalSession(null, now));
+        return null;
+    }
+
+    // private helper method to remove sessions from the metadata of their principal, with their principal objects
+    private void unregister(String name, List<String> sessionIds) {
+        for(String sessionId : sessionIds) {
+            _repository.deleteObject(SESSION_KEY_PREFIX + sessionId);
+        }
+        modify(name, sessions -> sessionIds.forEach(sessions::remove));
+    }
+
+    // private helper method to write the pending last request times, one write per principal. The session id to
+    // principal objects are read, so their sliding timeouts follow the sessions that are in use.
+    private void writeRefreshes() {
+        try {
+            for(String name : _pendingRefreshes.keySet()) {
+                Map<String, Instant> refreshes = _pendingRefreshes.remove(name);
+                if(refreshes == null) continue;
+                modify(name, sessions -> refreshes.forEach(sessions::refresh));
+                for(String sessionId : refreshes.keySet()) {
+                    _repository.peek(SESSION_KEY_PREFIX + sessionId);
+                }
+            }
+        } catch (RuntimeException e) {
+            // keep the background thread running
+            logger.error("Exception thrown writing last request times.", e);
+        }
+    }
+
+    // private helper method to read the metadata of a principal
+    private PrincipalSessions read(String name) {
+        Object obj = _repository.peek(KEY_PREFIX + name);
+        return obj instanceof PrincipalSessions ? (PrincipalSessions) obj : null;
+    }
+
+    // private helper method to modify the metadata of a principal -- sessions that timed out are dropped on every write
+    private void modify(String name, Consumer<PrincipalSessions> change) {
+        _repository.<PrincipalSessions>modify(KEY_PREFIX + name, sessions -> {
+            if(sessions == null) {
+                sessions = new PrincipalSessions();
+            }
+            sessions.prune(Instant.now(), _repository.getMaxInactiveTime());
+            change.accept(sessions);
+            return sessions;
+        });
+    }
+
+    // private helper method to resolve the name of a principal the same way Spring Security's Authentication does
+    private static String name(Object principal) {
+        if(principal instanceof UserDetails) {
+            return ((UserDetails) principal).getUsername();
+        } else if(principal instanceof Principal) {
+            return ((Principal) principal).getName();
+        }
+        return principal.toString();
+    }
+
+    // session information whose expiration is written to the principal's metadata -- a deserialized copy only
+    // expires locally
+    private static final class ScaleoutSessionInformation extends SessionInformation {
+        private static final long serialVersionUID = 1L;
+        private final transient ScaleoutSessionRegistry _registry;
+        private final String _name;
+
+        ScaleoutSessionInformation(ScaleoutSessionRegistry registry, Object principal, String name, String sessionId, PrincipalSessions.Entry entry) {
+            super(principal, sessionId, new Date(entry.lastRequest));
+            _registry = registry;
+            _name = name;
+            if(entry.expired) {
+                super.expireNow();
+            }
+        }
+
+        @Override
+        public void expireNow() {
+            super.expireNow();
+            if(_registry != null) {
+                String sessionId = getSessionId();
+                _registry.modify(_name, sessions -> sessions.expire(sessionId));
+            }
+        }
+    }
+
+    // keeps the metadata in sync with the sessions handled by the repository
+    private class Listener implements SessionLifecycleListener {
+        @Override
+        public void sessionAccessed(ScaleoutSession session) {
+            String name = session.principalNameIndexName();
+            if(name == null) return;
+            LocalSession local = _localSessions.get(session.getId());
+            if(local == null || local.principal == null) {
+                // not refreshed by this client yet
+                _localSessions.put(session.getId(), new LocalSession(name, Instant.EPOCH));
+            }
+            refreshLastRequest(session.getId());
+        }
+
+        @Override
+        public void sessionIdChanged(List<String> oldIds, ScaleoutSession session) {
+            for(String oldId : oldIds) {
+                LocalSession local = _localSessions.remove(oldId);
+                String name = local != null ? local.principal : session.principalNameIndexName();
+                if(name != null) {
+                    _localSessions.put(session.getId(), new LocalSession(name, Instant.now()));
+                    _repository.deleteObject(SESSION_KEY_PREFIX + oldId);
+                    _repository.<String>modify(SESSION_KEY_PREFIX + session.getId(), current -> name);
+                    modify(name, sessions -> sessions.rename(oldId, session.getId()));
+                }
+            }
+        }
+
+        @Override
+        public void sessionDeleted(String id) {
+            removeSessionInformation(id);
+        }
+
+        @Override
+        public void sessionsDeleted(String principalName, Collection<String> ids) {
+            // group the deleted sessions by principal so each principal's metadata is written once
+            Map<String, List<String>> byPrincipal = new HashMap<>();
+            for(String id : ids) {
+                LocalSession local = _localSessions.remove(id);
+                String name = principalName != null ? principalName : (local != null ? local.principal : null);
+                if(name != null) {
+                    byPrincipal.computeIfAbsent(name, key -> new ArrayList<>()).add(id);
+                }
+            }
+            for(Map.Entry<String, List<String>> entry : byPrincipal.entrySet()) {
+                unregister(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    // principal and last refresh of a session seen by this client, or a null principal and the time the session was
+    // found not to be registered
+    private static class LocalSession {
+        private final String principal;
+        private volatile Instant lastRefresh;
+
+        LocalSession(String principal, Instant lastRefresh) {
+            this.principal = principal;
+            this.lastRefresh = lastRefresh;
+        }
+    }
+}
@@ -15,28 +15,55 @@
 */
 package org.springframework.session.soss;
 
-import com.scaleoutsoftware.soss.client.*;
-import com.scaleoutsoftware.soss.client.da.*;
-import com.scaleoutsoftware.soss.client.da.ReadOptions;
-import com.scaleoutsoftware.soss.client.query.EqualFilter;
+import com.scaleoutsoftware.soss.client.SossIndexAttribute;
+import com.scaleoutsoftware.soss.client.query.Filter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.expression.Expression;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.session.FindByIndexNameSessionRepository;
 import org.springframework.session.Session;
+import org.springframework.session.soss.SessionStore.ReadOption;
 import org.springframework.session.soss.config.annotation.web.http.EnableScaleoutHttpSession;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.ObjectInputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 
 /**
@@ -77,25 +104,183 @@ public class ScaleoutSessionRepository implements FindByIndexNameSessionReposito
      * default remote read-pending retries.
      */
     public static final int DEF_REMOTE_READPENDING_RETRIES = 2400;
+    /**
+     * Default value for deferring the creation of sessions that do not qualify for persistence.
+     */
+    public static final boolean DEF_DEFER_UNQUALIFIED_SESSIONS = false;
+    /**
+     * Default timeout in minutes for persisted sessions that do not qualify for persistence. Zero uses the max inactive
+     * time of the repository.
+     */
+    public static final int DEF_UNQUALIFIED_SESSION_TIMEOUT = 0;
+
+    /**
+     * Default interval in ms to wait before retrying to lock a session that is locked by another request. Zero retries
+     * immediately.
+     */
+    public static final int DEF_LOCK_RETRY_INTERVAL = 0;
+    /**
+     * Default time in ms to wait for a session that is locked by another request. Zero waits indefinitely.
+     */
+    public static final long DEF_LOCK_TIMEOUT = 0;
+    /**
+     * Default staleness bound in ms of unlocked reads served from a GeoServer local replica. Zero always reads the
+     * remote object.
+     */
+    public static final long DEF_MAX_STALENESS = 0;
+    /**
+     * Default allowance in ms for the clock difference between the client that saved a local replica and the client
+     * reading it, added to the age of the replica.
+     */
+    public static final long DEF_CLOCK_SKEW_ALLOWANCE = 1000;
+    /**
+     * Default attribute size sampling rate: the attribute sizes of one in this many saves are measured. Zero disables
+     * sampling.
+     */
+    public static final int DEF_SIZE_SAMPLE_RATE = 100;
+    /**
+     * Default serialized size budget in bytes of a single session attribute. Zero is unlimited.
+     */
+    public static final int DEF_MAX_ATTRIBUTE_BYTES = 0;
+    /**
+     * Default serialized size budget in bytes of all attributes of a session. Zero is unlimited.
+     */
+    public static final int DEF_MAX_SESSION_BYTES = 0;
+    /**
+     * Default policy for sessions exceeding their size budgets.
+     */
+    public static final SizeBudgetPolicy DEF_SIZE_BUDGET_POLICY = SizeBudgetPolicy.WARN;
+    /**
+     * Default value for registering the repository's management bean.
+     */
+    public static final boolean DEF_ENABLE_JMX = true;
+    /**
+     * Default time in ms operations wait for an asynchronously connecting repository to become ready.
+     */
+    public static final long DEF_READY_TIMEOUT = 10000;
+    /**
+     * Default value for connecting to the store asynchronously.
+     */
+    public static final boolean DEF_CONNECT_ASYNCHRONOUSLY = false;
+    /**
+     * Default number of parallel deletes used by bulk invalidation.
+     */
+    public static final int DEF_BULK_PARALLELISM = 8;
+    /**
+     * Default maximum number of shared attribute values cached by the repository.
+     */
+    public static final int DEF_SHARED_VALUE_CACHE_SIZE = 1000;
+    /**
+     * Default value for keeping sessions in an in-process {@link EmbeddedSessionStore} instead of ScaleOut StateServer.
+     */
+    public static final boolean DEF_EMBEDDED_STORE = false;
 
     /**
      *
      */
     public static final String DEF_UNASSIGNED = "UNASSIGNED";
 
-    // the NamedCache to use for query
-    private final NamedCache _cache;
+    // property name prefix of the secondary index attributes of ScaleoutSession
+    private static final String SECONDARY_INDEX_PROPERTY = "secondaryIndex";
+    // name of the principal name index attribute of ScaleoutSession
+    private static final String PRINCIPAL_NAME_PROPERTY = "principalNameIndexName";
+    // name of the scan bucket index attribute of ScaleoutSession
+    private static final String SCAN_BUCKET_PROPERTY = "scanBucket";
+
+    // header of the session export format
+    private static final int EXPORT_MAGIC = 0x534f5353;
+    private static final int EXPORT_VERSION = 1;
+
+    // initial and maximum interval in ms between background connection attempts
+    private static final long DEF_CONNECT_RETRY_INTERVAL = 500;
+    private static final long DEF_MAX_CONNECT_RETRY_INTERVAL = 30000;
+    // key read to warm up the client connection
+    private static final String WARM_UP_KEY = "ScaleoutSessionRepository:warm-up";
+    // key prefix and timeout of the copy of a session kept while the session is recreated with the full timeout
+    private static final String PROMOTION_PREFIX = "ScaleoutSessionRepository:promoting:";
+    private static final Duration PROMOTION_COPY_TIMEOUT = Duration.ofMinutes(1);
+    // how long the id of a session deleted by a bulk delete while a local request held its lock is kept for that
+    // request's save
+    private static final long DELETED_WHILE_LOCKED_RETENTION_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    // number of attempts for a locked read-modify-write of a small object
+    static final int DEF_MODIFY_RETRIES = 100;
+
+    // the store holding the sessions, set once connected
+    private volatile SessionStore _store;
+    private final String _cacheName;
+    private final String _remoteStoreName;
+
+    // readiness of the store -- released once the connection (and, when connecting asynchronously, the warm-up) completed
+    private final CountDownLatch _ready = new CountDownLatch(1);
+    private volatile long _readyTimeout = DEF_READY_TIMEOUT;
+    // the thread connecting in the background, if any, and whether the repository was shut down
+    private volatile Thread _connector;
+    private volatile boolean _stopped;
+    private boolean _storeClosed;
 
     // helper objects for locking
-    private final ConcurrentHashMap<String, DataAccessor> _sessionAccessors;
-    private final HashSet<ReadOptions> _readOptions;
-    private final CreatePolicy _createPolicy;
+    private final ConcurrentHashMap<String, LockedAccessor> _sessionAccessors;
+    // ids of sessions deleted by a bulk delete while a local request held their lock, with the time of the delete
+    private final ConcurrentHashMap<String, Long> _deletedWhileLocked = new ConcurrentHashMap<>();
+    private final HashSet<ReadOption> _readOptions;
+    private final HashSet<ReadOption> _unlockedReadOptions;
+    private final HashSet<ReadOption> _localReadOptions;
+
+    // background removal of session ids retired by changeSessionId
+    private final OldSessionRemover _oldSessionRemover;
+
+    // names and extractors of the configured secondary indexes, by slot
+    private final List<String> _indexNames = new CopyOnWriteArrayList<>();
+    private final List<Function<Session, String>> _indexExtractors = new CopyOnWriteArrayList<>();
+
+    // bounded pool used for bulk operations -- idle threads time out
+    private final ThreadPoolExecutor _bulkExecutor;
+
+    // content-addressed values of shared attributes
+    private final SharedValues _sharedValues;
+
+    // optional listener, e.g. the ScaleoutSessionRegistry, notified of session lifecycle events
+    private final List<SessionLifecycleListener> _sessionListeners = new CopyOnWriteArrayList<>();
 
     // private member configuration variables
     private final Duration _maxInactiveTime;
     private final boolean _useLocking;
-    private final int _remoteReadPendingInterval;
-    private final int _remoteReadPendingRetries;
+    private final boolean _useRemoteStore;
+
+    // tunable settings -- adjustable at runtime through JMX, each operation reads them once
+    private volatile int _remoteReadPendingInterval;
+    private volatile int _remoteReadPendingRetries;
+    private volatile int _lockRetryInterval = DEF_LOCK_RETRY_INTERVAL;
+    private volatile long _lockTimeout = DEF_LOCK_TIMEOUT;
+
+    // operation counts and latencies
+    private final OperationStatistics _statistics = new OperationStatistics();
+    // hot-session and lock-contention profiler
+    private final SessionProfiler _profiler = new SessionProfiler();
+
+    // bounded-staleness reads of GeoServer local replicas
+    private volatile long _maxStalenessMillis = DEF_MAX_STALENESS;
+    private volatile long _clockSkewAllowanceMillis = DEF_CLOCK_SKEW_ALLOWANCE;
+    private final LongAdder _localReplicaReads = new LongAdder();
+    private final LongAdder _staleReplicaReads = new LongAdder();
+    private final LongAdder _remoteReads = new LongAdder();
+
+    // attribute size accounting and budgets
+    private final SessionSizeAnalyzer _sizeAnalyzer = new SessionSizeAnalyzer();
+    private volatile int _maxAttributeBytes = DEF_MAX_ATTRIBUTE_BYTES;
+    private volatile int _maxSessionBytes = DEF_MAX_SESSION_BYTES;
+    private volatile SizeBudgetPolicy _sizeBudgetPolicy = DEF_SIZE_BUDGET_POLICY;
+    // name under which the management bean is registered, or null
+    private volatile ObjectName _mbeanName;
+
+    // lazy persistence of sessions that hold no attributes and no principal
+    private boolean _deferUnqualifiedSessions = DEF_DEFER_UNQUALIFIED_SESSIONS;
+    private Predicate<ScaleoutSession> _persistencePredicate = session -> false;
+    private Duration _unqualifiedTimeout = null;
+    // set once this repository imports or reads a short-lived session -- until then no session it reads can be in
+    // the middle of a promotion, so a missing session doesn't look up a promotion copy
+    private volatile boolean _shortLivedSessionsSeen = false;
 
 
     /**
@@ -108,231 +293,1612 @@ public class ScaleoutSessionRepository implements FindByIndexNameSessionReposito
 	 * @param remoteReadRetries in case of a WAN failure, the number of times to retry a remote read
      */
     public ScaleoutSessionRepository(String cacheName, Duration maxInactiveTime, boolean useLocking, String remoteStoreName, int remoteReadPendingInterval, int remoteReadRetries) {
+        this(cacheName, maxInactiveTime, useLocking, remoteStoreName, remoteReadPendingInterval, remoteReadRetries, false);
+    }
+
+    /**
+     * Instantiates the ScaleOutSessionRepository.
+     * @param cacheName the cache name to store {@link org.springframework.session.soss.ScaleoutSession}s
+     * @param maxInactiveTime the max inactive time of a session
+     * @param useLocking if the scaleout repository is using locking
+     * @param remoteStoreName the name of the remote store (used for GeoServer Pro pull replication).
+     * @param remoteReadPendingInterval in case of a WAN failure, the interval in ms to wait when a remote read is pending
+     * @param remoteReadRetries in case of a WAN failure, the number of times to retry a remote read
+     * @param connectAsynchronously if true, the constructor returns immediately and the connection to the store is
+     *                              established and warmed up in the background, see {@link #isReady()}
+     */
+    public ScaleoutSessionRepository(String cacheName, Duration maxInactiveTime, boolean useLocking, String remoteStoreName, int remoteReadPendingInterval, int remoteReadRetries, boolean connectAsynchronously) {
+        this(cacheName, maxInactiveTime, useLocking, remoteStoreName, remoteReadPendingInterval, remoteReadRetries, (SessionStore) null);
+        if(connectAsynchronously) {
+            Thread connector = new Thread(this::connectInBackground, cacheName + "-connect");
+            connector.setDaemon(true);
+            _connector = connector;
+            connector.start();
+        } else {
+            connect();
+            _ready.countDown();
+        }
+    }
+
+    /**
+     * Instantiates the ScaleOutSessionRepository on the parameter store, e.g. an {@link EmbeddedSessionStore} for
+     * single-instance deployments and tests. The store is closed when the repository shuts down.
+     * @param cacheName the cache name, used to name background threads and the management bean
+     * @param maxInactiveTime the max inactive time of a session
+     * @param useLocking if the scaleout repository is using locking
+     * @param store the store
+     */
+    public ScaleoutSessionRepository(String cacheName, Duration maxInactiveTime, boolean useLocking, SessionStore store) {
+        this(cacheName, maxInactiveTime, useLocking, DEF_UNASSIGNED, DEF_REMOTE_READPENDING_RETRY_INTERVAL,
+                DEF_REMOTE_READPENDING_RETRIES, Objects.requireNonNull(store, "store"));
+    }
+
+    /**
+     * Package private constructor which instantiates the ScaleOutSessionRepository on the parameter store, e.g. the
+     * in-process stand-in used by the load simulator.
+     * @param cacheName the cache name, used to name background threads and the management bean
+     * @param maxInactiveTime the max inactive time of a session
+     * @param useLocking if the scaleout repository is using locking
+     * @param remoteStoreName the name of the remote store, or {@link #DEF_UNASSIGNED}
+     * @param remoteReadPendingInterval the interval in ms to wait when a remote read is pending
+     * @param remoteReadRetries the number of times to retry a remote read
+     * @param store the store, or null to connect to ScaleOut StateServer later
+     */
+    ScaleoutSessionRepository(String cacheName, Duration maxInactiveTime, boolean useLocking, String remoteStoreName, int remoteReadPendingInterval, int remoteReadRetries, SessionStore store) {
+        _cacheName = cacheName;
+        _remoteStoreName = remoteStoreName;
         _maxInactiveTime = maxInactiveTime;
         _useLocking = useLocking;
         _sessionAccessors = new ConcurrentHashMap<>();
         _remoteReadPendingInterval = remoteReadPendingInterval;
         _remoteReadPendingRetries = remoteReadRetries;
+        _useRemoteStore = remoteStoreName.compareTo(ScaleoutSessionRepository.DEF_UNASSIGNED) != 0;
+        _sharedValues = new SharedValues(maxInactiveTime, DEF_SHARED_VALUE_CACHE_SIZE);
+
+        // setup a new set of read options for a DataAccessor that uses locking
+        _readOptions = new HashSet<>();
+        _readOptions.add(ReadOption.OBJECT_MAY_NOT_EXIST); // don't throw "ObjectNotFound" exceptions -- return null.
+        _readOptions.add(ReadOption.RETURN_CACHED_OBJECT_IF_VALID); // use the client cache
+        if(_useRemoteStore) {
+            _readOptions.add(ReadOption.READ_REMOTE_OBJECT);
+        }
+
+        // unlocked reads (read-only requests or locking disabled) and local replica reads
+        _unlockedReadOptions = new HashSet<>(_readOptions);
+        _localReadOptions = new HashSet<>(_readOptions);
+        _localReadOptions.remove(ReadOption.READ_REMOTE_OBJECT);
+
+        if(_useLocking) {
+            _readOptions.add(ReadOption.LOCK_OBJECT); // if the object exists, lock the object
+        }
+
+        if(store != null) {
+            _store = store;
+            _ready.countDown();
+        }
+
+        _oldSessionRemover = new OldSessionRemover(cacheName, this::removeOldSession);
+        _bulkExecutor = new ThreadPoolExecutor(DEF_BULK_PARALLELISM, DEF_BULK_PARALLELISM, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, cacheName + "-bulk");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        _bulkExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns true once the connection to the ScaleOut StateServer store is established. A repository created with
+     * asynchronous connection reports ready after the connection has been warmed up; operations invoked before that
+     * wait up to the configured ready timeout, see {@link #setReadyTimeout(Duration)}.
+     * @return true if the session store is ready
+     */
+    public boolean isReady() {
+        return _ready.getCount() == 0;
+    }
+
+    /**
+     * Sets how long operations invoked before the session store is ready wait for it before failing with an
+     * {@link IllegalStateException}.
+     * @param readyTimeout the ready timeout, zero fails immediately
+     */
+    public void setReadyTimeout(Duration readyTimeout) {
+        _readyTimeout = readyTimeout == null || readyTimeout.isNegative() ? 0 : readyTimeout.toMillis();
+    }
+
+    /**
+     * Creates a new ScaleOut session.
+     * @return a new ScaleOut Session
+     */
+    @Override
+	public ScaleoutSession createSession() {
+        return new ScaleoutSession(Instant.now(), _maxInactiveTime);
+	}
+
+    /**
+     * Saves a {@link org.springframework.session.soss.ScaleoutSession}.
+     * @param session the session to save
+     * @throws SessionDeletedException if the session was deleted by a bulk delete while this request held its lock
+     * @throws SessionLockTimeoutException if this request lost the lock of the session and another request holds it
+     * beyond the lock timeout -- the session is not saved
+     */
+	@Override
+	public void save(ScaleoutSession session) {
+	    if(session == null) return;
+        awaitReady();
+        long start = System.nanoTime();
+        try {
+            saveSession(session);
+        } finally {
+            _statistics.record(OperationStatistics.Operation.SAVE, start);
+        }
+    }
+
+    // private helper method which creates, promotes or updates a session
+    private void saveSession(ScaleoutSession session) {
+        if(wasDeletedWhileLocked(session)) {
+            throw new SessionDeletedException("Session " + session.getId() + " was deleted while the request held its lock.");
+        }
+        checkSizes(session);
+        List<String> oldIds = session.oldIds();
+        // old ids of a session that was never stored do not exist in the store
+        if(session.isNew()) {
+            oldIds = null;
+        }
+        // if the session is new, or we have old sessions -- which means the key has changed --
+        // then we need to create the session and if necessary remove the old sessions.
+        if(session.isNew() || oldIds != null) {
+            boolean qualifies = qualifiesForPersistence(session);
+            if(!qualifies && _deferUnqualifiedSessions && session.isNew()) {
+                // nothing worth storing yet -- the session stays new so the first qualifying save creates it
+                return;
+            }
+            saveNewSession(session, oldIds, qualifies);
+            if(oldIds != null) {
+                for(SessionLifecycleListener listener : _sessionListeners) {
+                    listener.sessionIdChanged(oldIds, session);
+                }
+            }
+        } else if(session.isShortLived() && (_unqualifiedTimeout == null || qualifiesForPersistence(session))) {
+            // the session was stored with a short timeout -- the unqualified timeout or the remaining time to live of
+            // an imported session -- and now holds state worth keeping
+            promoteSession(session);
+        } else {
+            // if the session is not new, we need to update
+            saveExistingSession(session);
+        }
+    }
+
+    /**
+     * Finds a session based on the session id or null if no {@link org.springframework.session.soss.ScaleoutSession} with that ID exists.
+     * @param id the id of the session to find
+     * @return the associated {@link org.springframework.session.soss.ScaleoutSession} with the parameter id or NULL
+     * @throws SessionLockTimeoutException if the session stays locked by another request beyond the lock timeout
+     */
+    @Override
+    public ScaleoutSession findById(String id) {
+        if(id == null) return null;
+        awaitReady();
+        long start = System.nanoTime();
+        try {
+            return retrieveSession(id, _useLocking, false);
+        } finally {
+            _statistics.record(OperationStatistics.Operation.FIND, start);
+        }
+    }
+
+    /**
+     * Finds a session without locking it, for requests that only read the session. When a GeoServer remote store is
+     * configured and {@link #setMaxStaleness(Duration)} is set, the session is served from the local replica if the
+     * replica was saved within the staleness bound, by the saving client's clock, avoiding a WAN pull. Sessions found through this method should not
+     * be saved when locking is enabled.
+     * @param id the id of the session to find
+     * @return the associated {@link org.springframework.session.soss.ScaleoutSession} or NULL
+     */
+    public ScaleoutSession findByIdReadOnly(String id) {
+        if(id == null) return null;
+        awaitReady();
+        long start = System.nanoTime();
+        try {
+            return retrieveSession(id, false, true);
+        } finally {
+            _statistics.record(OperationStatistics.Operation.FIND, start);
+        }
+    }
+
+    /**
+     * Deletes a {@link org.springframework.session.soss.ScaleoutSession} from the
+     * configured NamedCache with the parameter session id.
+     * @param id the session id to delete
+     */
+    @Override
+    public void deleteById(String id) {
+        if(id == null) return;
+        awaitReady();
+        long start = System.nanoTime();
+        try {
+            delete(id);
+            deletePromotionCopy(id);
+            notifyDeleted(id);
+        } finally {
+            _statistics.record(OperationStatistics.Operation.DELETE, start);
+        }
+    }
+
+    /**
+     * Finds a batch of sessions, e.g. for a background job updating many known sessions. The sessions are read with
+     * up to {@link #DEF_BULK_PARALLELISM} threads. With locking enabled each found session is locked, as by
+     * {@link #findById(String)}, and must be saved -- e.g. with {@link #saveAll(Collection)} -- to release its lock.
+     * Locks are acquired in session id order without waiting: a session that is locked by another request is reported
+     * as {@link SessionBatchResult.Status#LOCKED}, so concurrent batches cannot deadlock. If the calling thread is
+     * interrupted, sessions not read yet are reported as {@link SessionBatchResult.Status#SKIPPED} and the sessions
+     * already found are still returned.
+     * @param ids the session ids
+     * @return the result for every id, in id order
+     */
+    public Map<String, SessionBatchResult> findAllById(Collection<String> ids) {
+        if(ids == null || ids.isEmpty()) return Collections.emptyMap();
+        awaitReady();
+        TreeSet<String> sorted = new TreeSet<>();
+        for(String id : ids) {
+            if(id != null) {
+                sorted.add(id);
+            }
+        }
+        return runBatch(new ArrayList<>(sorted), id -> id, id -> {
+            long start = System.nanoTime();
+            try {
+                return tryRetrieveSession(id, _useLocking);
+            } finally {
+                _statistics.record(OperationStatistics.Operation.FIND, start);
+            }
+        });
+    }
+
+    /**
+     * Saves a batch of sessions with up to {@link #DEF_BULK_PARALLELISM} threads, in session id order. Updates do not
+     * wait for locks: a session locked by another request or client is reported as
+     * {@link SessionBatchResult.Status#LOCKED} and not saved. New sessions, sessions with a changed id and sessions
+     * moving to the full timeout are saved as by {@link #save(ScaleoutSession)}.
+     * @param sessions the sessions
+     * @return the result for every session id, in id order
+     */
+    public Map<String, SessionBatchResult> saveAll(Collection<ScaleoutSession> sessions) {
+        if(sessions == null || sessions.isEmpty()) return Collections.emptyMap();
+        awaitReady();
+        TreeMap<String, ScaleoutSession> byId = new TreeMap<>();
+        for(ScaleoutSession session : sessions) {
+            if(session != null) {
+                byId.put(session.getId(), session);
+            }
+        }
+        return runBatch(new ArrayList<>(byId.values()), ScaleoutSession::getId, session -> {
+            long start = System.nanoTime();
+            try {
+                return trySaveSession(session);
+            } finally {
+                _statistics.record(OperationStatistics.Operation.SAVE, start);
+            }
+        });
+    }
+
+    /**
+     * Retrieves a HashMap correlating session IDs to {@link org.springframework.session.soss.ScaleoutSession}.
+     * @param indexName the principal name
+     * @param indexValue the desired value
+     * @return a hashmap containing all sessions associated with the configured index name and parameter index value or an empty map
+     */
+    @Override
+    public Map<String, ScaleoutSession> findByIndexNameAndIndexValue(String indexName, String indexValue) {
+        String property = indexProperty(indexName);
+        if(property == null || indexValue == null) {
+            return Collections.emptyMap();
+        }
+        awaitReady();
+        long start = System.nanoTime();
+        try {
+            return findByIndexProperty(property, indexValue);
+        } finally {
+            _statistics.record(OperationStatistics.Operation.QUERY, start);
+        }
+    }
+
+    // private helper method to retrieve all sessions with the parameter index property value
+    private Map<String, ScaleoutSession> findByIndexProperty(String property, String value) {
+        Set<String> keys = null;
+        try {
+            keys = _store.queryKeys(property, value);
+        } catch (SessionStoreException e) {
+            logger.error("Error thrown querying keys.", e);
+        }
+        if(keys != null) {
+            Map<String, ScaleoutSession> map = new HashMap<>();
+            for(String key : keys) {
+                SessionStore.Accessor da = getDA(key);
+                if(da == null) continue;
+                try {
+                    da.setLockedWhenReading(false);
+                    // the read may return the client cache's instance -- hand out a copy-on-write view
+                    ScaleoutSession session = toSession(da.read(_unlockedReadOptions));
+                    if(session != null) {
+                        map.put(key, session);
+                    }
+                } catch (SessionStoreException | ClassCastException e) {
+                    logger.error("Error thrown retrieving object.", e);
+                }
+            }
+            return map;
+        }
+        return null;
+    }
 
-        // setup a new create policy
-        _createPolicy = new CreatePolicy();
-        _createPolicy.setTimeout(TimeSpan.fromMinutes(maxInactiveTime.toMinutes()));
-        if(remoteStoreName.compareTo(ScaleoutSessionRepository.DEF_UNASSIGNED) != 0) {
-            _createPolicy.setDefaultCoherencyPolicy(new NotifyCoherencyPolicy());
+    /**
+     * Sets whether the creation of sessions that do not qualify for persistence is deferred. A session qualifies if it
+     * holds at least one attribute, has a principal or matches the {@link #setSessionPersistencePredicate(Predicate)}.
+     * A deferred session is not stored until a save occurs where the session qualifies.
+     * @param deferUnqualifiedSessions true to defer creating sessions that do not qualify
+     */
+    public void setDeferUnqualifiedSessions(boolean deferUnqualifiedSessions) {
+        _deferUnqualifiedSessions = deferUnqualifiedSessions;
+    }
+
+    /**
+     * Sets an additional predicate that qualifies a session for persistence even if it holds no attributes and has
+     * no principal.
+     * @param persistencePredicate the predicate, or null to qualify sessions by attributes and principal only
+     */
+    public void setSessionPersistencePredicate(Predicate<ScaleoutSession> persistencePredicate) {
+        _persistencePredicate = persistencePredicate != null ? persistencePredicate : session -> false;
+    }
+
+    /**
+     * Sets the timeout used when a session that does not qualify for persistence is stored, e.g. because creation is
+     * not deferred. Once such a session qualifies it is moved to the max inactive time of the repository.
+     * @param timeout the timeout for unqualified sessions, or null (or zero) to use the max inactive time
+     */
+    public void setUnqualifiedSessionTimeout(Duration timeout) {
+        if(timeout == null || timeout.isZero() || timeout.isNegative()) {
+            _unqualifiedTimeout = null;
+        } else {
+            _unqualifiedTimeout = timeout;
+        }
+    }
+
+    /**
+     * Sets the interval in ms to wait before retrying a remote read that is pending.
+     * @param interval the remote read retry interval
+     */
+    public void setRemoteReadPendingRetryInterval(int interval) {
+        _remoteReadPendingInterval = interval;
+    }
+
+    /**
+     * Sets the maximum number of retries of a remote read that is pending.
+     * @param retries the maximum number of remote read retries
+     */
+    public void setMaxRemoteReadRetries(int retries) {
+        _remoteReadPendingRetries = retries;
+    }
+
+    /**
+     * Sets the interval in ms to wait before retrying to lock a session that is locked by another request.
+     * @param interval the lock retry interval, zero retries immediately
+     */
+    public void setLockRetryInterval(int interval) {
+        _lockRetryInterval = interval;
+    }
+
+    /**
+     * Sets the time in ms to wait for a session that is locked by another request before giving up. When the timeout
+     * elapses {@link #findById(String)} and {@link #save(ScaleoutSession)} throw a {@link SessionLockTimeoutException}.
+     * @param timeout the lock timeout, zero waits indefinitely
+     */
+    public void setLockTimeout(long timeout) {
+        _lockTimeout = timeout;
+    }
+
+    /**
+     * Sets the staleness bound of read-only requests when a GeoServer remote store is configured. A read through
+     * {@link #findByIdReadOnly(String)} is served from the local replica if the replica was saved within the bound.
+     * The save time is stored with the session by the client that saved it, and the clock skew allowance is added to
+     * the age, see {@link #setClockSkewAllowance(Duration)}. Otherwise, or if the replica is missing or was saved by a
+     * release that doesn't record the save time, the remote object is read. The bound limits the age of the replica's
+     * content only as far as the clocks of the clients agree within the allowance, and a newer save may not have
+     * reached the replica yet. Reads through {@link #findById(String)} always read the remote object, even when
+     * locking is disabled, since the session may be saved.
+     * @param maxStaleness the staleness bound, null or zero always reads the remote object
+     */
+    public void setMaxStaleness(Duration maxStaleness) {
+        _maxStalenessMillis = maxStaleness == null || maxStaleness.isNegative() ? 0 : maxStaleness.toMillis();
+    }
+
+    /**
+     * Sets the allowance for the clock difference between clients, added to the age of a local replica before it is
+     * compared with the staleness bound, see {@link #setMaxStaleness(Duration)}. A staleness bound that doesn't exceed
+     * the allowance always reads the remote object.
+     * @param allowance the clock skew allowance, null or negative for none
+     */
+    public void setClockSkewAllowance(Duration allowance) {
+        _clockSkewAllowanceMillis = allowance == null || allowance.isNegative() ? 0 : allowance.toMillis();
+    }
+
+    /**
+     * Sets how often the serialized sizes of session attributes are sampled. Sampled sizes are aggregated per
+     * attribute name and value class and exposed through the {@link ScaleoutSessionRepositoryMXBean}.
+     * @param sampleRate the number of saves per sampled save, zero disables sampling
+     */
+    public void setSizeSampleRate(int sampleRate) {
+        _sizeAnalyzer.setSampleRate(sampleRate);
+    }
+
+    /**
+     * Sets the serialized size budget of a single session attribute, enforced on every save.
+     * @param maxAttributeBytes the budget in bytes, zero is unlimited
+     */
+    public void setMaxAttributeBytes(int maxAttributeBytes) {
+        _maxAttributeBytes = maxAttributeBytes;
+    }
+
+    /**
+     * Sets the serialized size budget of all attributes of a session, enforced on every save.
+     * @param maxSessionBytes the budget in bytes, zero is unlimited
+     */
+    public void setMaxSessionBytes(int maxSessionBytes) {
+        _maxSessionBytes = maxSessionBytes;
+    }
+
+    /**
+     * Sets the policy applied when a saved session exceeds its size budgets.
+     * @param policy the policy
+     */
+    public void setSizeBudgetPolicy(SizeBudgetPolicy policy) {
+        _sizeBudgetPolicy = policy != null ? policy : DEF_SIZE_BUDGET_POLICY;
+    }
+
+    /**
+     * Registers a {@link ScaleoutSessionRepositoryMXBean} for this repository with the platform MBean server. The
+     * bean is unregistered by {@link #shutdown()}.
+     */
+    public void registerMBean() {
+        try {
+            ObjectName name = new ObjectName("org.springframework.session.soss:type=ScaleoutSessionRepository,name=" + ObjectName.quote(_cacheName));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new RepositoryManagement(this), name);
+            _mbeanName = name;
+        } catch (JMException e) {
+            logger.warn("Couldn't register the repository MBean.", e);
+        }
+    }
+
+    /**
+     * Stops background processing for this repository and closes the store. Old session ids that are still queued for
+     * removal are removed on the calling thread.
+     */
+    public void shutdown() {
+        _stopped = true;
+        Thread connector = _connector;
+        if(connector != null) {
+            connector.interrupt();
+        }
+        unregisterMBean();
+        _oldSessionRemover.shutdown();
+        _bulkExecutor.shutdown();
+        closeStore();
+    }
+
+    // private helper method to close the store once -- a background connection that completes after the shutdown
+    // closes the store itself
+    private synchronized void closeStore() {
+        SessionStore store = _store;
+        if(store != null && !_storeClosed) {
+            _storeClosed = true;
+            store.close();
+        }
+    }
+
+    // package private method to add a listener notified of session lifecycle events
+    void addSessionListener(SessionLifecycleListener sessionListener) {
+        _sessionListeners.add(sessionListener);
+    }
+
+    // package private accessor for the max inactive time of sessions
+    Duration getMaxInactiveTime() {
+        return _maxInactiveTime;
+    }
+
+    // package private helper method to read an object without locking it or returning the client cached instance
+    Object peek(String id) {
+        awaitReady();
+        SessionStore.Accessor da = getDA(id);
+        if(da == null) return null;
+        try {
+            da.setLockedWhenReading(false);
+            return da.read(EnumSet.of(ReadOption.OBJECT_MAY_NOT_EXIST));
+        } catch (SessionStoreException e) {
+            logger.error("Error thrown reading object.", e);
+            return null;
+        }
+    }
+
+    // package private helper method to delete an object that isn't a session -- no listener is notified
+    void deleteObject(String key) {
+        awaitReady();
+        SessionStore.Accessor da = getDA(key);
+        if(da == null) return;
+        try {
+            da.delete();
+        } catch (SessionStoreException e) {
+            logger.error("Error thrown deleting object.", e);
+        }
+    }
+
+    /**
+     * Package private helper method which performs a locked read-modify-write of a small object stored under the
+     * parameter key. The modifier receives null if the object does not exist and returns the object to store.
+     * @param key the key of the object
+     * @param modifier the function that modifies the object
+     * @param <T> the type of the object
+     * @return true if the object was stored
+     */
+    @SuppressWarnings("unchecked")
+    <T extends Serializable> boolean modify(String key, UnaryOperator<T> modifier) {
+        awaitReady();
+        Set<ReadOption> options = EnumSet.of(ReadOption.OBJECT_MAY_NOT_EXIST, ReadOption.LOCK_OBJECT);
+        for(int attempt = 0; attempt < DEF_MODIFY_RETRIES; attempt++) {
+            SessionStore.Accessor da = getDA(key);
+            if(da == null) return false;
+            da.setLockedWhenReading(true);
+            try {
+                T current = (T) da.read(options);
+                T modified = modifier.apply(current);
+                if(current != null) {
+                    da.update(modified, true);
+                } else {
+                    da.create(_maxInactiveTime, modified);
+                }
+                return true;
+            } catch (SessionStoreException.Locked | SessionStoreException.Exists | SessionStoreException.ReadPending e) {
+                // another client is modifying the object -- back off and retry
+                sleepQuietly(attempt + 1);
+            } catch (SessionStoreException | ClassCastException e) {
+                logger.error("Error thrown modifying object.", e);
+                try {
+                    da.releaseLock();
+                } catch (SessionStoreException ignored) { }
+                return false;
+            }
+        }
+        logger.warn("Giving up modifying object after " + DEF_MODIFY_RETRIES + " attempts.");
+        return false;
+    }
+
+    // private helper method to unregister the management bean
+    private void unregisterMBean() {
+        ObjectName name = _mbeanName;
+        _mbeanName = null;
+        if(name == null) return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if(server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.warn("Couldn't unregister the repository MBean.", e);
+        }
+    }
+
+    // package private accessors used by the management bean
+    OperationStatistics statistics() {
+        return _statistics;
+    }
+
+    long maxStalenessMillis() {
+        return _maxStalenessMillis;
+    }
+
+    long localReplicaReads() {
+        return _localReplicaReads.sum();
+    }
+
+    long staleReplicaReads() {
+        return _staleReplicaReads.sum();
+    }
+
+    long sharedValueCacheHits() {
+        return _sharedValues.hits();
+    }
+
+    long sharedValueCacheMisses() {
+        return _sharedValues.misses();
+    }
+
+    long remoteReads() {
+        return _remoteReads.sum();
+    }
+
+    SessionSizeAnalyzer sizeAnalyzer() {
+        return _sizeAnalyzer;
+    }
+
+    SessionProfiler profiler() {
+        return _profiler;
+    }
+
+    int remoteReadPendingRetryInterval() {
+        return _remoteReadPendingInterval;
+    }
+
+    int maxRemoteReadRetries() {
+        return _remoteReadPendingRetries;
+    }
+
+    int lockRetryInterval() {
+        return _lockRetryInterval;
+    }
+
+    long lockTimeout() {
+        return _lockTimeout;
+    }
+
+    // package private helper method which retrieves the redacted ids of the locked sessions, see
+    // SessionProfiler.redact, and how long, in ms, each lock has been held
+    Map<String, Long> lockedSessions() {
+        long now = System.currentTimeMillis();
+        Map<String, Long> locked = new TreeMap<>();
+        _sessionAccessors.forEach((id, accessor) -> locked.put(SessionProfiler.redact(id), now - accessor.lockedAt));
+        return locked;
+    }
+
+    // package private helper method to force the release of the lock of a session by its redacted id
+    boolean forceReleaseRedactedLock(String redactedId) {
+        for(Map.Entry<String, LockedAccessor> entry : _sessionAccessors.entrySet()) {
+            if(SessionProfiler.redact(entry.getKey()).equals(redactedId)) {
+                return forceReleaseLock(entry.getKey(), entry.getValue());
+            }
+        }
+        return false;
+    }
+
+    int lockedSessionCount() {
+        return _sessionAccessors.size();
+    }
+
+    // package private helper method to release a lock held by this repository and drop its DA from the table
+    boolean forceReleaseLock(String id) {
+        LockedAccessor accessor = _sessionAccessors.get(id);
+        return accessor != null && forceReleaseLock(id, accessor);
+    }
+
+    // private helper method to release a lock only if the table still holds the parameter DA for it -- the request
+    // that held the lock may have released it and another one locked the session again in the meantime
+    private boolean forceReleaseLock(String id, LockedAccessor accessor) {
+        if(!_sessionAccessors.remove(id, accessor)) return false;
+        try {
+            accessor.da.releaseLock();
+            return true;
+        } catch (SessionStoreException e) {
+            logger.error("Error thrown releasing lock.", e);
+            return false;
+        }
+    }
+
+    // package private helper method to force the release of all locks held longer than the parameter time
+    int forceReleaseLocks(long heldMillis) {
+        long now = System.currentTimeMillis();
+        int released = 0;
+        for(Map.Entry<String, LockedAccessor> entry : _sessionAccessors.entrySet()) {
+            if(now - entry.getValue().lockedAt > heldMillis && forceReleaseLock(entry.getKey(), entry.getValue())) {
+                released++;
+            }
+        }
+        return released;
+    }
+
+    // private helper method to retrieve the DA holding the lock ticket of a session, or null
+    private SessionStore.Accessor lockedAccessor(String id) {
+        LockedAccessor accessor = _sessionAccessors.get(id);
+        return accessor != null ? accessor.da : null;
+    }
+
+    // private helper method to remove the DA holding the lock ticket of a session from the table
+    private SessionStore.Accessor removeLockedAccessor(String id) {
+        LockedAccessor accessor = _sessionAccessors.remove(id);
+        return accessor != null ? accessor.da : null;
+    }
+
+    // private helper method to put the DA holding the lock ticket of a session in the table -- the lock time is kept
+    // when the same DA is put again
+    private void putLockedAccessor(String id, SessionStore.Accessor da) {
+        _sessionAccessors.compute(id, (key, current) -> current != null && current.da == da ? current : new LockedAccessor(da));
+    }
+
+    // private helper method to sleep between retries
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // private helper method to tell the listeners a session was deleted
+    private void notifyDeleted(String id) {
+        for(SessionLifecycleListener listener : _sessionListeners) {
+            listener.sessionDeleted(id);
+        }
+    }
+
+    // private helper method to sample attribute sizes and enforce the size budgets. Sizes are measured on the form of
+    // the session that is stored, i.e. with shared values replaced by references -- which only happens on sampled
+    // saves or when a budget is configured. Shared values are not stored until the session passes the budget check.
+    private void checkSizes(ScaleoutSession session) {
+        final int maxAttributeBytes = _maxAttributeBytes;
+        final int maxSessionBytes = _maxSessionBytes;
+        boolean sample = _sizeAnalyzer.shouldSample();
+        boolean enforce = maxAttributeBytes > 0 || maxSessionBytes > 0;
+        if(!sample && !enforce) return;
+
+        ScaleoutSession measured = session.snapshot();
+        _sharedValues.replaceWithUnstoredReferences(measured);
+        Map<String, Long> sizes = SessionSizeAnalyzer.measure(measured);
+        if(sample) {
+            _sizeAnalyzer.record(session, sizes);
+        }
+        if(!enforce) return;
+
+        // attributes over their own budget, then the largest remaining attributes while the session is over budget
+        List<Map.Entry<String, Long>> bySize = new ArrayList<>(sizes.entrySet());
+        bySize.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        long total = 0;
+        for(Long size : sizes.values()) {
+            total += size;
+        }
+        List<String> oversized = new ArrayList<>();
+        for(Map.Entry<String, Long> size : bySize) {
+            boolean attributeOver = maxAttributeBytes > 0 && size.getValue() > maxAttributeBytes;
+            boolean sessionOver = maxSessionBytes > 0 && total > maxSessionBytes;
+            if(!attributeOver && !sessionOver) continue;
+            oversized.add(size.getKey());
+            total -= size.getValue();
+        }
+        if(oversized.isEmpty()) return;
+
+        String message = "Session exceeds its size budget, oversized attributes: " + oversized + ".";
+        switch (_sizeBudgetPolicy) {
+            case REJECT:
+                // the session won't be saved -- release the lock this client holds for it, under the id it was
+                // locked with if the id was changed
+                forceReleaseLock(session.originalId());
+                throw new SessionSizeExceededException(message);
+            case DROP:
+                logger.warn(message + " Dropping them.");
+                for(String name : oversized) {
+                    session.removeAttribute(name);
+                }
+                break;
+            default:
+                logger.warn(message);
+        }
+    }
+
+    // private helper method which connects to the ScaleOut StateServer store
+    private void connect() {
+        _store = new GridSessionStore(_cacheName, _useRemoteStore ? _remoteStoreName : null);
+    }
+
+    // private helper method which connects and warms up in the background, retrying with a capped exponential backoff
+    private void connectInBackground() {
+        long backoff = DEF_CONNECT_RETRY_INTERVAL;
+        while(!_stopped) {
+            try {
+                connect();
+                if(_stopped) {
+                    closeStore();
+                    return;
+                }
+                warmUp();
+                _ready.countDown();
+                logger.info("Session store " + _cacheName + " is ready.");
+                return;
+            } catch (RuntimeException e) {
+                logger.warn("Couldn't connect to the session store, retrying in " + backoff + " ms.", e);
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, DEF_MAX_CONNECT_RETRY_INTERVAL);
+        }
+    }
+
+    // private helper method which primes the serializer, the key path and the client connection so the first
+    // requests don't pay for class loading and connection setup
+    private void warmUp() {
+        try {
+            ScaleoutSession session = new ScaleoutSession(Instant.now(), _maxInactiveTime);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+                oos.writeObject(session);
+            }
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                ois.readObject();
+            }
+            SessionStore.Accessor da = getDA(WARM_UP_KEY);
+            if(da != null) {
+                da.setLockedWhenReading(false);
+                da.read(EnumSet.of(ReadOption.OBJECT_MAY_NOT_EXIST));
+            }
+        } catch (SessionStoreException e) {
+            throw new RuntimeException(e);
+        } catch (IOException | ClassNotFoundException e) {
+            // the serializer warm-up is best effort
+            logger.warn("Couldn't warm up session serialization.", e);
+        }
+    }
+
+    // private helper method which blocks until the store is ready or the ready timeout elapsed
+    private void awaitReady() {
+        if(_ready.getCount() == 0) return;
+        try {
+            if(_ready.await(_readyTimeout, TimeUnit.MILLISECONDS)) return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new IllegalStateException("Session store " + _cacheName + " is not ready.");
+    }
+
+    // private helper method to check if a session holds state worth storing for the full session timeout
+    private boolean qualifiesForPersistence(ScaleoutSession session) {
+        return session.hasAttributes()
+                || PRINCIPAL_NAME_RESOLVER.resolvePrincipal(session) != null
+                || _persistencePredicate.test(session);
+    }
+
+    /**
+     * Stores the values of an attribute once in the store under the hash of their content, with sessions holding a
+     * reference to the value. Resolved values are cached by the repository, so the attribute should only hold large
+     * values that are shared by many sessions and never modified after being set, e.g. tenant configuration. Shared
+     * attributes should be added before sessions are saved. Values are hashed by their Java serialized form, which is
+     * not canonical for every type -- e.g. equal HashMaps may serialize differently -- so equal values are only
+     * guaranteed to be stored once if they serialize deterministically.
+     * @param attributeName the name of the attribute
+     */
+    public void addSharedAttribute(String attributeName) {
+        _sharedValues.addAttribute(attributeName);
+    }
+
+    /**
+     * Sets the maximum number of shared attribute values cached by the repository. The cache is resized in place, so
+     * the shared attributes and the cache statistics are kept; values over the new size are evicted.
+     * @param cacheSize the maximum number of cached values
+     */
+    public void setSharedValueCacheSize(int cacheSize) {
+        _sharedValues.setCacheSize(Math.max(1, cacheSize));
+    }
+
+    /**
+     * Adds a secondary index in the lowest free slot. The index value of a session is resolved by the extractor every
+     * time the session is saved, and sessions can be found by the index through
+     * {@link #findByIndexNameAndIndexValue(String, String)} and deleted through
+     * {@link #deleteByIndexNameAndIndexValue(String, String)}. Up to {@link ScaleoutSession#MAX_SECONDARY_INDEXES}
+     * secondary indexes can be added, and they should be added before sessions are saved.
+     * <p>
+     *     The slot decides which <code>secondaryIndexN</code> property of the stored session holds the index value, and
+     *     slots are assigned in call order. Every instance sharing the store must therefore add the same indexes in
+     *     the same order, or pin the slots with {@link #addIndex(String, int, Function)}.
+     * </p>
+     * @param indexName the name of the index
+     * @param extractor resolves the index value of a session, or null if the session is not indexed
+     */
+    public void addIndex(String indexName, Function<Session, String> extractor) {
+        addIndex(indexName, 0, extractor);
+    }
+
+    /**
+     * Adds a secondary index in a fixed slot, see {@link #addIndex(String, Function)}. Pinning the slot keeps the
+     * index in the same <code>secondaryIndexN</code> property on every instance, whatever order the indexes are
+     * added in.
+     * @param indexName the name of the index
+     * @param slot the slot, from 1 to {@link ScaleoutSession#MAX_SECONDARY_INDEXES}, or 0 for the lowest free slot
+     * @param extractor resolves the index value of a session, or null if the session is not indexed
+     */
+    public void addIndex(String indexName, int slot, Function<Session, String> extractor) {
+        if(indexName == null || extractor == null) {
+            throw new IllegalArgumentException("indexName and extractor must not be null");
+        }
+        if(slot < 0 || slot > ScaleoutSession.MAX_SECONDARY_INDEXES) {
+            throw new IllegalArgumentException("slot must be between 0 and " + ScaleoutSession.MAX_SECONDARY_INDEXES);
         }
-
-        // setup a new set of read options for a DataAccessor that uses locking
-        _readOptions = new HashSet<>();
-        _readOptions.add(ReadOptions.ObjectMayNotExist); // don't throw "ObjectNotFound" exceptions -- return null.
-        _readOptions.add(ReadOptions.ReturnCachedObjectIfValid); // use the client cache
-        if(remoteStoreName.compareTo(ScaleoutSessionRepository.DEF_UNASSIGNED) != 0) {
-            _readOptions.add(ReadOptions.ReadRemoteObject);
+        synchronized (_indexNames) {
+            if(PRINCIPAL_NAME_INDEX_NAME.equals(indexName) || _indexNames.contains(indexName)) {
+                throw new IllegalArgumentException("Index " + indexName + " already exists.");
+            }
+            int index = slot > 0 ? slot - 1 : _indexNames.indexOf(null);
+            if(index < 0) {
+                index = _indexNames.size();
+            }
+            if(index >= ScaleoutSession.MAX_SECONDARY_INDEXES) {
+                throw new IllegalStateException("At most " + ScaleoutSession.MAX_SECONDARY_INDEXES + " secondary indexes are supported.");
+            }
+            if(index < _indexNames.size() && _indexNames.get(index) != null) {
+                throw new IllegalStateException("Slot " + (index + 1) + " is used by index " + _indexNames.get(index) + ".");
+            }
+            // unused slots below a pinned slot are null
+            while(_indexNames.size() <= index) {
+                _indexExtractors.add(null);
+                _indexNames.add(null);
+            }
+            _indexExtractors.set(index, extractor);
+            _indexNames.set(index, indexName);
         }
+    }
 
-        if(_useLocking) {
-            _readOptions.add(ReadOptions.LockObject); // if the object exists, lock the object
+    /**
+     * Deletes all sessions with the parameter index value. A local request that holds the lock of a deleted session
+     * gets a {@link SessionDeletedException} when it saves the session.
+     * @param indexName the principal name index or a configured secondary index
+     * @param indexValue the index value
+     * @return the number of sessions deleted
+     */
+    public int deleteByIndexNameAndIndexValue(String indexName, String indexValue) {
+        if(PRINCIPAL_NAME_INDEX_NAME.equals(indexName)) {
+            return deleteByPrincipalName(indexValue);
         }
-
+        String property = indexProperty(indexName);
+        if(property == null || indexValue == null) return 0;
+        awaitReady();
         try {
-            _cache = CacheFactory.getCache(cacheName);
-            StateServerKey.setDefaultAppId(StateServerKey.appNameToId(cacheName));
-            if(remoteStoreName.compareTo(ScaleoutSessionRepository.DEF_UNASSIGNED) != 0) {
-                List<RemoteStore> stores = new LinkedList<>();
-                stores.add(new RemoteStore(remoteStoreName));
-                _cache.setRemoteStores(stores);
-            }
-        } catch (StateServerException e) {
-            logger.error("Couldn't create namespace.");
-            throw new RuntimeException(e);
-        } catch (NamedCacheException e) {
-            logger.error("Couldn't create NamedCache.");
-            throw new RuntimeException(e);
+            return deleteKeys(_store.queryKeys(property, indexValue), null);
+        } catch (SessionStoreException e) {
+            logger.error("Error thrown querying keys.", e);
+            return 0;
         }
     }
 
     /**
-     * Creates a new ScaleOut session.
-     * @return a new ScaleOut Session
+     * Deletes all sessions of a principal, e.g. to log a user out everywhere after a password reset. A local request
+     * that holds the lock of a deleted session gets a {@link SessionDeletedException} when it saves the session, rather
+     * than recreating it.
+     * @param principalName the principal name
+     * @return the number of sessions deleted
      */
-    @Override
-	public ScaleoutSession createSession() {
-        return new ScaleoutSession(Instant.now(), _maxInactiveTime);
-	}
+    public int deleteByPrincipalName(String principalName) {
+        if(principalName == null) return 0;
+        awaitReady();
+        try {
+            return deleteKeys(_store.queryKeys(PRINCIPAL_NAME_PROPERTY, principalName), principalName);
+        } catch (SessionStoreException e) {
+            logger.error("Error thrown querying keys.", e);
+            return 0;
+        }
+    }
 
     /**
-     * Saves a {@link org.springframework.session.soss.ScaleoutSession}.
-     * @param session the session to save
+     * Deletes all sessions matching a query filter on the {@link SossIndexAttribute} properties of
+     * {@link ScaleoutSession}. Only the keys of the matching sessions are retrieved -- session bodies are not
+     * deserialized -- and the deletes are performed in parallel. Locks held by this repository for the deleted
+     * sessions are released, and the requests holding them get a {@link SessionDeletedException} when they save. Filters
+     * are only evaluated by the ScaleOut StateServer store -- with other stores, such as the {@link EmbeddedSessionStore},
+     * an error is logged and no session is deleted.
+     * @param filter the query filter
+     * @return the number of sessions deleted
      */
-	@Override
-	public void save(ScaleoutSession session) {
-	    if(session == null) return;
-
-        List<String> oldIds = session.oldIds();
-        // if the session is new, or we have old sessions -- which means the key has changed --
-        // then we need to create the session and if necessary remove the old sessions.
-        if(session.isNew() || oldIds != null) {
-            saveNewSession(session, oldIds);
-        } else {
-            // if the session is not new, we need to update
-            saveExistingSession(session);
+    public int deleteAll(Filter filter) {
+        if(filter == null) return 0;
+        if(!(_store instanceof FilterableSessionStore)) {
+            logger.error("The session store doesn't evaluate query filters, no session deleted.");
+            return 0;
+        }
+        awaitReady();
+        try {
+            return deleteKeys(((FilterableSessionStore) _store).queryKeys(filter), null);
+        } catch (SessionStoreException e) {
+            logger.error("Error thrown querying keys.", e);
+            return 0;
         }
     }
 
     /**
-     * Finds a session based on the session id or null if no {@link org.springframework.session.soss.ScaleoutSession} with that ID exists.
-     * @param id the id of the session to find
-     * @return the associated {@link org.springframework.session.soss.ScaleoutSession} with the parameter id or NULL
+     * Scans the ids of all sessions in the store. Sessions are scanned one of {@link ScaleoutSession#SCAN_BUCKETS}
+     * pages at a time, so only the keys of the current page are held in memory. Sessions created or deleted while the
+     * scan is running may or may not be returned. Pages are queried by the {@link ScaleoutSession#scanBucket()} index
+     * attribute, so sessions last saved by a release without that attribute are not returned until they are saved
+     * again.
+     * @return a lazy stream of session ids
+     * @throws IllegalStateException if a page couldn't be queried
      */
-    @Override
-    public ScaleoutSession findById(String id) {
-        if(id == null) return null;
-        return retrieveSession(id);
+    public Stream<String> scanIds() {
+        awaitReady();
+        return IntStream.range(0, ScaleoutSession.SCAN_BUCKETS)
+                .mapToObj(this::scanPage)
+                .flatMap(Set::stream);
     }
 
     /**
-     * Deletes a {@link org.springframework.session.soss.ScaleoutSession} from the
-     * configured NamedCache with the parameter session id.
-     * @param id the session id to delete
+     * Scans all unexpired sessions in the store, page by page, see {@link #scanIds()}. Sessions are read without
+     * locking them and without updating their last access time.
+     * @return a lazy stream of sessions
+     * @throws IllegalStateException if a page couldn't be queried
      */
-    @Override
-    public void deleteById(String id) {
-        if(id == null) return;
-        delete(id);
+    public Stream<ScaleoutSession> scan() {
+        return scanIds().map(this::readSnapshot).filter(Objects::nonNull);
     }
 
     /**
-     * Retrieves a HashMap correlating session IDs to {@link org.springframework.session.soss.ScaleoutSession}.
-     * @param indexName the principal name
-     * @param indexValue the desired value
-     * @return a hashmap containing all sessions associated with the configured index name and parameter index value or an empty map
+     * Exports all unexpired sessions, e.g. to move them to another namespace or cluster with
+     * {@link #importSessions(InputStream)}. Sessions are scanned page by page and read and serialized in parallel by
+     * the bulk operation threads, with a bounded number of sessions in flight. Each session is written as a
+     * length-prefixed record along with its remaining time to live.
+     * @param out the stream to write to -- it is flushed, not closed
+     * @return the number of sessions exported
+     * @throws IOException if the export couldn't be written
      */
-    @Override
-    public Map<String, ScaleoutSession> findByIndexNameAndIndexValue(String indexName, String indexValue) {
-        if(!PRINCIPAL_NAME_INDEX_NAME.equals(indexName) ||
-                indexValue == null) {
-            return Collections.emptyMap();
-        } else {
-            Set<CachedObjectId<ScaleoutSession>> keys = null;
-            try {
-                keys = _cache.queryKeys(ScaleoutSession.class, new EqualFilter("principalNameIndexName", indexValue));
-            } catch (NamedCacheException e) {
-                logger.error("Error thrown querying keys.", e);
+    public long exportSessions(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(EXPORT_MAGIC);
+        data.writeInt(EXPORT_VERSION);
+        long exported = 0;
+        Deque<Future<ExportRecord>> inFlight = new ArrayDeque<>();
+        Iterator<String> ids = scanIds().iterator();
+        try {
+            while(ids.hasNext() || !inFlight.isEmpty()) {
+                while(ids.hasNext() && inFlight.size() < 2 * DEF_BULK_PARALLELISM) {
+                    String id = ids.next();
+                    inFlight.add(_bulkExecutor.submit(() -> exportRecord(id)));
+                }
+                ExportRecord record = awaitRecord(inFlight.poll());
+                if(record != null) {
+                    data.writeInt(record.bytes.length);
+                    data.writeLong(record.remainingMillis);
+                    data.write(record.bytes);
+                    exported++;
+                }
             }
-            if(keys != null) {
-                Map<String, ScaleoutSession> map = new HashMap<>();
-                for(CachedObjectId<ScaleoutSession> key : keys) {
+        } finally {
+            for(Future<ExportRecord> pending : inFlight) {
+                pending.cancel(true);
+            }
+        }
+        data.writeInt(0);
+        data.flush();
+        return exported;
+    }
+
+    /**
+     * Imports sessions exported by {@link #exportSessions(OutputStream)}. Sessions keep their id and attributes, and
+     * expire after the remaining time to live they had when exported, independent of the clocks of the two clusters.
+     * A session is stored with its remaining time to live, or the unqualified session timeout if it was short-lived
+     * and that is shorter, and moves to the full timeout on its next save. Sessions that expired in the meantime and
+     * sessions whose id already exists in this store are skipped. Sessions are stored in parallel by the bulk
+     * operation threads.
+     * @param in the stream to read from -- it is not closed
+     * @return the number of sessions imported
+     * @throws IOException if the export couldn't be read or is not a session export
+     */
+    public long importSessions(InputStream in) throws IOException {
+        awaitReady();
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if(data.readInt() != EXPORT_MAGIC) {
+            throw new IOException("Not a session export.");
+        }
+        int version = data.readInt();
+        if(version != EXPORT_VERSION) {
+            throw new IOException("Unsupported session export version " + version + ".");
+        }
+        final int maxInFlight = 2 * DEF_BULK_PARALLELISM;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        LongAdder imported = new LongAdder();
+        LongAdder skipped = new LongAdder();
+        try {
+            while(true) {
+                int length = data.readInt();
+                if(length == 0) break;
+                if(length < 0) {
+                    throw new IOException("Corrupt session export.");
+                }
+                long remainingMillis = data.readLong();
+                byte[] bytes = new byte[length];
+                data.readFully(bytes);
+                inFlight.acquire();
+                _bulkExecutor.execute(() -> {
                     try {
-                        map.put(key.getKeyString(), _cache.get(key));
-                    } catch (NamedCacheException e) {
-                        logger.error("Error thrown retrieving object.", e);
+                        (importRecord(remainingMillis, bytes) ? imported : skipped).increment();
+                    } finally {
+                        inFlight.release();
                     }
-                }
-                return map;
+                });
             }
+            // wait for the imports in flight
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted importing sessions.");
         }
-        return null;
+        logger.info("Imported " + imported.sum() + " sessions, skipped " + skipped.sum() + ".");
+        return imported.sum();
+    }
+
+    // private helper method to retrieve the keys of a scan page
+    private Set<String> scanPage(int bucket) {
+        try {
+            return _store.queryKeys(SCAN_BUCKET_PROPERTY, ScaleoutSession.scanBucketName(bucket));
+        } catch (SessionStoreException e) {
+            throw new IllegalStateException("Error thrown scanning sessions.", e);
+        }
+    }
+
+    // private helper method to read an unexpired session without locking or touching it
+    private ScaleoutSession readSnapshot(String id) {
+        SessionStore.Accessor da = getDA(id);
+        if(da == null) return null;
+        try {
+            da.setLockedWhenReading(false);
+            ScaleoutSession session = toSession(da.read(_unlockedReadOptions));
+            return session == null || session.isExpired() ? null : session;
+        } catch (SessionStoreException | ClassCastException e) {
+            logger.error("Error thrown reading session.", e);
+            return null;
+        }
+    }
+
+    // private helper method to read and serialize a session for export -- null if it doesn't exist or expired
+    private ExportRecord exportRecord(String id) throws IOException {
+        ScaleoutSession session = readSnapshot(id);
+        if(session == null) return null;
+        long remainingMillis = Duration.between(Instant.now(),
+                session.getLastAccessedTime().plus(session.getMaxInactiveInterval())).toMillis();
+        if(remainingMillis <= 0) return null;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(session);
+        }
+        return new ExportRecord(remainingMillis, bytes.toByteArray());
+    }
+
+    // private helper method to wait for an export record
+    private static ExportRecord awaitRecord(Future<ExportRecord> record) throws IOException {
+        try {
+            return record.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted exporting sessions.");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    // private helper method to store an exported session -- false if it was skipped
+    private boolean importRecord(long remainingMillis, byte[] bytes) {
+        ScaleoutSession session;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            session = (ScaleoutSession) ois.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            logger.error("Error thrown reading exported session.", e);
+            return false;
+        }
+        // set the last access time so the session expires after its remaining time to live
+        Instant now = Instant.now();
+        session.setLastAccessedTime(now.minus(session.getMaxInactiveInterval()).plusMillis(remainingMillis));
+        if(session.isExpired()) return false;
+        // the store timeout is the remaining time to live, in whole seconds, capped by the timeout this repository uses
+        // for the session. A session stored with less than the full timeout is short-lived, so it is moved to the full
+        // timeout on its next save, like a session that qualifies for persistence.
+        boolean unqualified = session.isShortLived() && _unqualifiedTimeout != null;
+        Duration fullTimeout = unqualified ? _unqualifiedTimeout : _maxInactiveTime;
+        Duration timeout = Duration.ofSeconds((remainingMillis + 999) / 1000);
+        if(timeout.compareTo(fullTimeout) > 0) {
+            timeout = fullTimeout;
+        }
+        session.markShortLived(unqualified || timeout.compareTo(_maxInactiveTime) < 0);
+        if(session.isShortLived()) {
+            _shortLivedSessionsSeen = true;
+        }
+        session.resolveQueryableAttributes(_indexExtractors);
+        session.markSaved();
+        SessionStore.Accessor da = getDA(session.getId());
+        if(da == null) return false;
+        try {
+            da.create(timeout, storedForm(session));
+            return true;
+        } catch (SessionStoreException.Exists e) {
+            // the session exists in this store -- keep it
+            return false;
+        } catch (SessionStoreException e) {
+            logger.error("Error thrown importing session.", e);
+            return false;
+        }
+    }
+
+    // private helper method to delete the sessions with the parameter keys -- like the imports, no more than twice
+    // the bulk parallelism deletes are queued at a time
+    private int deleteKeys(Set<String> keys, String principalName) {
+        if(keys == null || keys.isEmpty()) return 0;
+
+        final int maxInFlight = 2 * DEF_BULK_PARALLELISM;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        List<String> deleted = Collections.synchronizedList(new ArrayList<>(keys.size()));
+        try {
+            for(String key : keys) {
+                inFlight.acquire();
+                _bulkExecutor.execute(() -> {
+                    try {
+                        String id = deleteKey(key);
+                        if(id != null) {
+                            deleted.add(id);
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            // wait for the deletes in flight
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } catch (InterruptedException e) {
+            // the deletes already queued complete in the background
+            Thread.currentThread().interrupt();
+        }
+
+        List<String> ids;
+        synchronized (deleted) {
+            ids = new ArrayList<>(deleted);
+        }
+        if(!ids.isEmpty()) {
+            for(SessionLifecycleListener listener : _sessionListeners) {
+                listener.sessionsDeleted(principalName, ids);
+            }
+        }
+        return ids.size();
     }
 
-    // private helper method to hash a string to a 32-byte key
-    private byte[] hashStringKey(String id) {
+    // private helper method to delete a session by key -- returns the session id or null if the delete failed
+    private String deleteKey(String id) {
+        long start = System.nanoTime();
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(id.getBytes());
-            return md.digest();
-        } catch (NoSuchAlgorithmException e) {
+            // use the DA holding the lock ticket if this client has the session locked -- the request holding the lock
+            // is told by its save that the session is gone
+            SessionStore.Accessor da = id != null ? removeLockedAccessor(id) : null;
+            boolean locked = da != null;
+            if(da == null) {
+                da = getDA(id);
+            }
+            if(da == null) return null;
+            da.delete();
+            if(locked) {
+                long now = System.currentTimeMillis();
+                _deletedWhileLocked.values().removeIf(deleted -> now - deleted > DELETED_WHILE_LOCKED_RETENTION_MILLIS);
+                _deletedWhileLocked.put(id, now);
+            }
+            deletePromotionCopy(id);
+            return id;
+        } catch (SessionStoreException e) {
+            logger.error("Error thrown deleting session.", e);
+            return null;
+        } finally {
+            _statistics.record(OperationStatistics.Operation.DELETE, start);
+        }
+    }
+
+    // private helper method which tells whether a session was deleted by a bulk delete while a local request held its
+    // lock -- the id is forgotten once the request saves. Sessions that rotated their id are checked by their first id.
+    private boolean wasDeletedWhileLocked(ScaleoutSession session) {
+        return !_deletedWhileLocked.isEmpty() && _deletedWhileLocked.remove(session.originalId()) != null;
+    }
+
+    // private helper method to resolve the index property of ScaleoutSession for an index, or null if the index does
+    // not exist
+    private String indexProperty(String indexName) {
+        if(indexName == null) {
             return null;
+        } else if(PRINCIPAL_NAME_INDEX_NAME.equals(indexName)) {
+            return PRINCIPAL_NAME_PROPERTY;
         }
+        int slot = _indexNames.indexOf(indexName);
+        return slot < 0 ? null : SECONDARY_INDEX_PROPERTY + (slot + 1);
     }
 
-    // private helper method to remove old sessions
+    // private helper method to queue old sessions for background removal. A local DA holding the lock ticket for an
+    // old id is taken out of the table, so no local thread reuses it, and its lock is released on the calling thread.
+    // Only the old id is handed to the remover, which deletes the object with a fresh DA.
     private void removeOldSessions(List<String> oldIds) {
         if(oldIds != null) {
-            for(String id : oldIds){
+            for(String id : oldIds) {
+                SessionStore.Accessor da = removeLockedAccessor(id);
+                if(da != null) {
+                    try {
+                        da.releaseLock();
+                    } catch (SessionStoreException e) {
+                        logger.warn("Couldn't release the lock of an old session id.", e);
+                    }
+                }
+                _oldSessionRemover.enqueue(id);
+            }
+        }
+    }
+
+    // private helper method used by the background remover to delete a single old session
+    private void removeOldSession(String id) throws SessionStoreException {
+        SessionStore.Accessor da = getDA(id);
+        if(da != null) {
+            da.delete();
+        }
+    }
+
+    // private helper method which runs a batch operation over sorted items -- the items are split into contiguous
+    // ranges processed in order by the bulk operation threads
+    private <T> Map<String, SessionBatchResult> runBatch(List<T> items, Function<T, String> key, Function<T, SessionBatchResult> operation) {
+        if(items.isEmpty()) return Collections.emptyMap();
+        int ranges = Math.min(DEF_BULK_PARALLELISM, items.size());
+        int rangeSize = (items.size() + ranges - 1) / ranges;
+        // set when the calling thread is interrupted -- the ranges skip the items they have not started
+        AtomicBoolean skipRemaining = new AtomicBoolean();
+        List<List<T>> work = new ArrayList<>(ranges);
+        List<Future<List<SessionBatchResult>>> futures = new ArrayList<>(ranges);
+        for(int from = 0; from < items.size(); from += rangeSize) {
+            List<T> range = items.subList(from, Math.min(items.size(), from + rangeSize));
+            work.add(range);
+            futures.add(_bulkExecutor.submit(() -> {
+                List<SessionBatchResult> results = new ArrayList<>(range.size());
+                for(T item : range) {
+                    results.add(skipRemaining.get() ? SessionBatchResult.of(SessionBatchResult.Status.SKIPPED) : operation.apply(item));
+                }
+                return results;
+            }));
+        }
+        // wait for every range even when interrupted, so sessions locked by the batch are reported to the caller
+        Map<String, SessionBatchResult> results = new LinkedHashMap<>();
+        boolean interrupted = false;
+        for(int i = 0; i < futures.size(); i++) {
+            List<T> range = work.get(i);
+            List<SessionBatchResult> rangeResults = null;
+            while(true) {
                 try {
-                    // will handle local cleanup for local DAs
-                    delete(id);
-                } catch (Exception e) {
-                    logger.error("Exception thrown while deleting old session.", e);
+                    rangeResults = futures.get(i).get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    skipRemaining.set(true);
+                } catch (ExecutionException e) {
+                    logger.error("Error thrown in batch operation.", e.getCause());
+                    break;
+                }
+            }
+            for(int j = 0; j < range.size(); j++) {
+                results.put(key.apply(range.get(j)), rangeResults != null ? rangeResults.get(j) : SessionBatchResult.of(SessionBatchResult.Status.FAILED));
+            }
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return results;
+    }
+
+    // private helper method which reads a session for a batch -- a single attempt that doesn't wait for locks
+    private SessionBatchResult tryRetrieveSession(String id, boolean lock) {
+        if(_oldSessionRemover.isPending(id)) {
+            return SessionBatchResult.of(SessionBatchResult.Status.MISSING);
+        }
+        // the session is checked out by a request of this client
+        if(lock && lockedAccessor(id) != null) {
+            return SessionBatchResult.of(SessionBatchResult.Status.LOCKED);
+        }
+        SessionStore.Accessor da = getDA(id);
+        if(da == null) {
+            return SessionBatchResult.of(SessionBatchResult.Status.FAILED);
+        }
+        da.setLockedWhenReading(lock);
+        Object readResult;
+        try {
+            readResult = da.read(lock ? _readOptions : _unlockedReadOptions);
+        } catch (SessionStoreException.Locked e) {
+            _profiler.recordAccess(id, 0, 1);
+            return SessionBatchResult.of(SessionBatchResult.Status.LOCKED);
+        } catch (SessionStoreException e) {
+            logger.error("Error thrown reading session.", e);
+            return SessionBatchResult.of(SessionBatchResult.Status.FAILED);
+        }
+        _profiler.recordAccess(id, 0, 0);
+        try {
+            ScaleoutSession session = toSession(readResult);
+            if(session == null) {
+                return SessionBatchResult.of(SessionBatchResult.Status.MISSING);
+            }
+            if(session.isExpired()) {
+                // delete through the accessor holding the lock ticket
+                da.delete();
+                notifyDeleted(id);
+                return SessionBatchResult.of(SessionBatchResult.Status.EXPIRED);
+            }
+            touch(session);
+            if(lock) {
+                putLockedAccessor(id, da);
+            }
+            return SessionBatchResult.found(session);
+        } catch (SessionStoreException | ClassCastException e) {
+            logger.error("Error thrown reading session.", e);
+            if(lock) {
+                try {
+                    da.releaseLock();
+                } catch (SessionStoreException le) {
+                    logger.warn(le);
                 }
             }
+            return SessionBatchResult.of(SessionBatchResult.Status.FAILED);
+        }
+    }
+
+    // private helper method which saves a session for a batch -- updates are a single attempt that doesn't wait for locks
+    private SessionBatchResult trySaveSession(ScaleoutSession session) {
+        if(wasDeletedWhileLocked(session)) {
+            return SessionBatchResult.of(SessionBatchResult.Status.MISSING);
+        }
+        try {
+            if(session.isNew() || session.hasOldIds() || session.isShortLived()) {
+                saveSession(session);
+                return SessionBatchResult.of(SessionBatchResult.Status.SAVED);
+            }
+            checkSizes(session);
+        } catch (SessionSizeExceededException e) {
+            logger.error(e.getMessage());
+            return SessionBatchResult.of(SessionBatchResult.Status.FAILED);
+        }
+        session.resolveQueryableAttributes(_indexExtractors);
+        String id = session.getId();
+        SessionStore.Accessor da = _useLocking ? lockedAccessor(id) : null;
+        boolean heldLock = da != null;
+        if(da == null) {
+            da = getDA(id);
+            if(da == null) {
+                return SessionBatchResult.of(SessionBatchResult.Status.FAILED);
+            }
+        }
+        try {
+            session.markSaved();
+            da.update(storedForm(session), true);
+            if(heldLock) {
+                removeLockedAccessor(id);
+            }
+            return SessionBatchResult.of(SessionBatchResult.Status.SAVED);
+        } catch (SessionStoreException.Locked e) {
+            _profiler.recordContention(id, 0, 1);
+            return SessionBatchResult.of(SessionBatchResult.Status.LOCKED);
+        } catch (SessionStoreException e) {
+            logger.error("Error thrown saving session.", e);
+            if(heldLock) {
+                forceReleaseLock(id);
+            }
+            return SessionBatchResult.of(SessionBatchResult.Status.FAILED);
         }
     }
 
     // private helper method to retrieve a session
-    private ScaleoutSession retrieveSession(String id) {
+    private ScaleoutSession retrieveSession(String id, boolean lock, boolean readOnly) {
+        // an old id that is waiting to be removed is treated as if it no longer exists
+        if(_oldSessionRemover.isPending(id)) {
+            return null;
+        }
+
+        // a read-only request may be served from the local replica of a GeoServer remote store if it is recent enough --
+        // other reads may save the session, which must not write a stale replica back
+        final long maxStalenessMillis = _maxStalenessMillis;
+        if(readOnly && _useRemoteStore && maxStalenessMillis > 0) {
+            ScaleoutSession session = readLocalReplica(id, maxStalenessMillis);
+            if(session != null) {
+                touch(session);
+                return session;
+            }
+        }
+
+        // read the tunable settings once, so a change made through JMX applies to whole operations
+        final int remoteReadPendingRetries = _remoteReadPendingRetries;
+        final int remoteReadPendingInterval = _remoteReadPendingInterval;
+        final int lockRetryInterval = _lockRetryInterval;
+        final long lockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(_lockTimeout);
+        long lockWaitStart = 0;
+        int lockRetries = 0;
+
         int remoteReadAttempt = 0;
 	    // create or retrieve a DA
-        DataAccessor da = null;
-        if(_useLocking) {
-            da = _sessionAccessors.get(id);
+        SessionStore.Accessor da = null;
+        if(lock) {
+            da = lockedAccessor(id);
         }
 
         if(da == null) {
             da = getDA(id);
+            if(da == null) return null;
+            da.setLockedWhenReading(lock);
         }
 
         // perform read
-        ReadResult readResult = null;
+        Set<ReadOption> readOptions = lock ? _readOptions : _unlockedReadOptions;
+        Object readResult = null;
+        boolean readCompleted = false;
+        boolean promotionChecked = false;
+        if(_useRemoteStore) {
+            // one remote read, however often it is retried while a WAN pull is pending or the session is locked
+            _remoteReads.increment();
+        }
         do {
             try {
-                if(da != null)
-                    readResult = da.read(_readOptions);
-            } catch (ObjectLockedException ole) {
+                readResult = da.read(readOptions);
+                if(readResult == null && !promotionChecked && promotionPossible()) {
+                    // the session may be missing because it is being promoted to the full timeout
+                    promotionChecked = true;
+                    if(completePromotion(id)) continue;
+                }
+                readCompleted = true;
+            } catch (SessionStoreException.Locked ole) {
                 // If the object is locked, it means two threads tried to retrieve the same session and some other thread
                 // won. In case the other thread is local to this client, we will retrieve the correct DA and retry.
                 // If another client won (i.e. some other instance of the session repository has the lock), we will keep
                 // re-trying the read until we can successfully read and lock the session.
-                if(_useLocking) {
-                    DataAccessor tempDa = _sessionAccessors.get(id);
+                if(lock) {
+                    SessionStore.Accessor tempDa = lockedAccessor(id);
                     if (tempDa != null) {
                         da = tempDa;
                     }
+                    // back off and give up once the configured lock timeout is exceeded
+                    lockRetries++;
+                    if(lockWaitStart == 0) {
+                        lockWaitStart = System.nanoTime();
+                    } else if(lockTimeoutNanos > 0 && System.nanoTime() - lockWaitStart > lockTimeoutNanos) {
+                        _profiler.recordAccess(id, System.nanoTime() - lockWaitStart, lockRetries);
+                        throw new SessionLockTimeoutException("Timed out waiting for the lock of session " + id + ".");
+                    }
+                    if(lockRetryInterval > 0) {
+                        sleepQuietly(lockRetryInterval);
+                    }
                 } else {
                     // with locking disabled an ObjectLockedException should not occur -- log the error and return null
                     logger.error(ole);
                     return null;
                 }
-            } catch (ReadThroughPendingException rtpe) {
+            } catch (SessionStoreException.ReadPending rtpe) {
                 // If a read through pending exception is thrown, it means the session is on a remote store and the
                 // local store is in process of pulling the object to the local store. In this case, we simply retry the
                 // read and lock according to the configured number of retries and retry interval.
                 remoteReadAttempt++;
-                if (remoteReadAttempt >= _remoteReadPendingRetries) {
+                if (remoteReadAttempt >= remoteReadPendingRetries) {
                     logger.error("read through pending timed-out.");
                     return null;
                 } else
                     try {
-                        Thread.sleep(_remoteReadPendingInterval);
+                        Thread.sleep(remoteReadPendingInterval);
                     } catch (InterruptedException e1) {
                         throw new RuntimeException("Unexpected error while waiting to retry");
                     }
             }
-            catch (StateServerException e) {
+            catch (SessionStoreException e) {
                 logger.error(e);
                 return null;
             }
-        } while(readResult == null);
+        } while(!readCompleted);
+        _profiler.recordAccess(id, lockWaitStart == 0 ? 0 : System.nanoTime() - lockWaitStart, lockRetries);
 
         // read completed -- and if locking is enabled, the object is locked -- any exception from this point on means we need to
         // release the lock (IOException, or ClassCastException). The finally block is used for lock cleanup and
         // keeping track of the DA that holds the correct lock ticket.
         boolean releaseLock = false;
+        boolean keepAccessor = false;
         try {
-            ScaleoutSession session = retrieveSessionFromReadResult(readResult);
+            ScaleoutSession session = toSession(readResult);
             if(session != null) {
                 if(session.isExpired()) {
-                    // the session is expired, delete it and return null
+                    // the session is expired, delete it (which removes the local DA) and return null
                     delete(id);
+                    notifyDeleted(id);
                     return null;
                 } else {
                     // mark the session
-                    session.setLastAccessedTime(Instant.now());
-                    session.markTouched();
+                    touch(session);
+                    keepAccessor = lock;
                 }
             }
             return session;
         } catch (Exception e) {
-            releaseLock = _useLocking;
+            releaseLock = lock;
             return null;
         } finally {
             // if an exception occurred, we need to cleanup, i.e., release the stateserver lock and remove the local
@@ -340,63 +1906,193 @@ public class ScaleoutSessionRepository implements FindByIndexNameSessionReposito
             if(releaseLock) {
                 try {
                     da.releaseLock();
-                } catch (StateServerException e) {
+                } catch (SessionStoreException e) {
                     logger.warn(e);
                 }
-            } else if(_useLocking) { // make sure the proper DA is in the local table
-                _sessionAccessors.put(id, da);
+            } else if(keepAccessor) { // make sure the proper DA is in the local table
+                putLockedAccessor(id, da);
+            }
+        }
+    }
+
+    // private helper method to mark a retrieved session as accessed
+    private void touch(ScaleoutSession session) {
+        session.setLastAccessedTime(Instant.now());
+        session.markTouched();
+        for(SessionLifecycleListener listener : _sessionListeners) {
+            listener.sessionAccessed(session);
+        }
+    }
+
+    // private helper method to read a session from the local replica without a WAN pull. Returns null if the replica
+    // is missing, expired or older than the staleness bound -- the caller then performs a remote read.
+    private ScaleoutSession readLocalReplica(String id, long maxStalenessMillis) {
+        SessionStore.Accessor da = getDA(id);
+        if(da == null) return null;
+        da.setLockedWhenReading(false);
+        try {
+            ScaleoutSession session = toSession(da.read(_localReadOptions));
+            if(session == null || session.isExpired()) {
+                return null;
             }
+            // the replica is as old as its last save, by the saving client's clock -- allow for the clocks to differ
+            long savedAt = session.savedAtMillis();
+            long age = System.currentTimeMillis() - savedAt + _clockSkewAllowanceMillis;
+            if(savedAt == 0 || age > maxStalenessMillis) {
+                _staleReplicaReads.increment();
+                return null;
+            }
+            _localReplicaReads.increment();
+            return session;
+        } catch (SessionStoreException | ClassCastException e) {
+            logger.warn("Error thrown reading local replica, reading remote object.", e);
+            return null;
         }
     }
 
     // private helper method to create a DA
-    private DataAccessor getDA(String id) {
+    SessionStore.Accessor getDA(String id) {
         if(id == null) return null;
         try {
-            StateServerKey key = new StateServerKey(hashStringKey(id));
-            key.setKeyString(id);
-            DataAccessor da = new DataAccessor(key);
+            SessionStore.Accessor da = _store.accessor(id);
             da.setLockedWhenReading(_useLocking);
             return da;
-        } catch (StateServerException e) {
+        } catch (SessionStoreException e) {
             logger.error(e);
             return null;
         }
     }
 
     // private helper method to create a new session in stateserver
-    private void saveNewSession(ScaleoutSession session, List<String> oldSessionIds) {
-        session.resolveQueryableAttributes();
+    private void saveNewSession(ScaleoutSession session, List<String> oldSessionIds, boolean qualifies) {
+        session.resolveQueryableAttributes(_indexExtractors);
+        // sessions that don't qualify are stored with the short timeout, if one is configured
+        boolean shortLived = !qualifies && _unqualifiedTimeout != null;
+        session.markShortLived(shortLived);
         try {
-            DataAccessor da = getDA(session.getId());
+            SessionStore.Accessor da = getDA(session.getId());
             session.markTouched();
+            session.markSaved();
             if(da != null)
-                da.create(_createPolicy, session);
-        } catch (ObjectExistsException oee) {
+                da.create(shortLived ? _unqualifiedTimeout : _maxInactiveTime, storedForm(session));
+        } catch (SessionStoreException.Exists oee) {
             logger.warn(oee);
             saveExistingSession(session);
-        } catch (StateServerException e) {
+        } catch (SessionStoreException e) {
             logger.error("Exception thrown while saving new session", e);
         } finally {
             removeOldSessions(oldSessionIds);
         }
     }
 
+    // private helper method to move a short-lived session to the full timeout. The store timeout is fixed when the
+    // object is created, so the session is deleted -- which also releases a lock held by this client -- and recreated.
+    // A copy is stored first, so a request that reads the session between the delete and the create restores it from
+    // the copy instead of not finding it, see completePromotion.
+    private void promoteSession(ScaleoutSession session) {
+        SessionStore.Accessor copy = getDA(PROMOTION_PREFIX + session.getId());
+        if(copy == null) {
+            saveExistingSession(session);
+            return;
+        }
+        session.resolveQueryableAttributes(_indexExtractors);
+        session.markShortLived(false);
+        session.markTouched();
+        session.markSaved();
+        ScaleoutSession stored = storedForm(session);
+        try {
+            copy.create(PROMOTION_COPY_TIMEOUT, new PromotionCopy(stored));
+        } catch (SessionStoreException e) {
+            // another request is promoting the session, or the copy couldn't be stored -- keep the short timeout for now
+            logger.warn("Couldn't store the promotion copy of a session, updating it with the short timeout.", e);
+            session.markShortLived(true);
+            saveExistingSession(session);
+            return;
+        }
+        try {
+            delete(session.getId());
+            SessionStore.Accessor da = getDA(session.getId());
+            if(da != null) {
+                da.create(_maxInactiveTime, stored);
+            }
+        } catch (SessionStoreException.Exists e) {
+            // either a concurrent request restored the session from the copy, which holds this save, or the delete
+            // failed and the short-lived session still has to be updated
+            Object current = peek(session.getId());
+            if(current instanceof ScaleoutSession && ((ScaleoutSession) current).isShortLived()) {
+                session.markShortLived(true);
+                saveExistingSession(session);
+            }
+        } catch (SessionStoreException e) {
+            logger.error("Exception thrown while promoting session", e);
+        } finally {
+            try {
+                copy.delete();
+            } catch (SessionStoreException e) {
+                logger.warn("Couldn't delete the promotion copy of a session, it expires with its timeout.", e);
+            }
+        }
+    }
+
+    // private helper method which tells whether a missing session may be in the middle of a promotion -- sessions are
+    // only short-lived with an unqualified session timeout or after an import
+    private boolean promotionPossible() {
+        return _unqualifiedTimeout != null || _shortLivedSessionsSeen;
+    }
+
+    // private helper method to delete the promotion copy of a deleted session, so a copy left by a promotion that
+    // didn't complete cannot restore the session
+    private void deletePromotionCopy(String id) {
+        if(!promotionPossible()) return;
+        try {
+            SessionStore.Accessor copy = _store.accessor(PROMOTION_PREFIX + id);
+            copy.setLockedWhenReading(false);
+            copy.delete();
+        } catch (SessionStoreException e) {
+            logger.warn("Couldn't delete the promotion copy of a deleted session, it expires with its timeout.", e);
+        }
+    }
+
+    // private helper method which completes the promotion of a session that wasn't found because it is being recreated
+    // with the full timeout -- the promotion copy is stored under the session id. Returns true if the session should be
+    // read again.
+    private boolean completePromotion(String id) {
+        try {
+            SessionStore.Accessor copy = _store.accessor(PROMOTION_PREFIX + id);
+            copy.setLockedWhenReading(false);
+            Object promoted = copy.read(EnumSet.of(ReadOption.OBJECT_MAY_NOT_EXIST));
+            if(!(promoted instanceof PromotionCopy)) return false;
+            try {
+                _store.accessor(id).create(_maxInactiveTime, ((PromotionCopy) promoted).session);
+            } catch (SessionStoreException.Exists e) {
+                // the promoting request recreated the session first
+            }
+            return true;
+        } catch (SessionStoreException e) {
+            logger.warn("Couldn't complete the promotion of a session.", e);
+            return false;
+        }
+    }
+
     // private helper method to save an existing session -- i.e. update the session.
     private void saveExistingSession(ScaleoutSession session) {
-	    DataAccessor da = null;
+	    SessionStore.Accessor da = null;
 	    boolean releaseLock = false;
         boolean removeSessionAccessor = false;
         boolean foundSessionAccessorWithLock = false;
+        final int lockRetryInterval = _lockRetryInterval;
+        final long lockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(_lockTimeout);
+        long lockWaitStart = 0;
+        int lockRetries = 0;
 
         try {
-
-
+            // attributes may have changed since the session was created -- keep the query attributes current
+            session.resolveQueryableAttributes(_indexExtractors);
             do {
                 // If we're updating a session, that means we've found an existing session (i.e. session.isNew() == false).
                 // so, we need to retrieve the DA we used to retrieve the session
                 if(_useLocking) {
-                    da = _sessionAccessors.get(session.getId());
+                    da = lockedAccessor(session.getId());
                     foundSessionAccessorWithLock = (da != null);
                 }
 
@@ -409,18 +2105,36 @@ public class ScaleoutSessionRepository implements FindByIndexNameSessionReposito
 
                 // it's always safe to call update and unlock even when locking is disabled or we don't have a lock ticket
                 try {
-                    if(da != null) {
-                        da.update(session, true);
-                        removeSessionAccessor = true;
+                    if(da == null) {
+                        logger.error("Couldn't create a data accessor, session not saved.");
                         break;
                     }
-                } catch(ObjectLockedException ole) { logger.warn("object locked, retrying."); }
+                    session.markSaved();
+                    da.update(storedForm(session), true);
+                    removeSessionAccessor = true;
+                    break;
+                } catch(SessionStoreException.Locked ole) {
+                    logger.warn("object locked, retrying.");
+                    lockRetries++;
+                    if(lockWaitStart == 0) {
+                        lockWaitStart = System.nanoTime();
+                    } else if(lockTimeoutNanos > 0 && System.nanoTime() - lockWaitStart > lockTimeoutNanos) {
+                        // the lock ticket this request held, if any, is no longer valid
+                        removeSessionAccessor = foundSessionAccessorWithLock;
+                        throw new SessionLockTimeoutException("Timed out waiting for the lock of session " + session.getId() + ", session not saved.");
+                    }
+                    if(lockRetryInterval > 0) {
+                        sleepQuietly(lockRetryInterval);
+                    }
+                }
             } while(true);
 
-        } catch (StateServerException e) {
+        } catch (SessionStoreException e) {
             logger.error("Error thrown saving session.", e);
             releaseLock = foundSessionAccessorWithLock;
+            removeSessionAccessor = foundSessionAccessorWithLock;
         } finally {
+            _profiler.recordContention(session.getId(), lockWaitStart == 0 ? 0 : System.nanoTime() - lockWaitStart, lockRetries);
             try {
                  // cleanup if an exception occurred
                 if(releaseLock) {
@@ -429,7 +2143,7 @@ public class ScaleoutSessionRepository implements FindByIndexNameSessionReposito
 
                 // cleanup to remove the existing DA
                 if(removeSessionAccessor) {
-                    _sessionAccessors.remove(session.getId());
+                    removeLockedAccessor(session.getId());
                 }
             } catch (Exception e) {
                 logger.error(e);
@@ -438,51 +2152,92 @@ public class ScaleoutSessionRepository implements FindByIndexNameSessionReposito
     }
 
     // private helper to extract a session object from a DA read result
-    private ScaleoutSession retrieveSessionFromReadResult(ReadResult result) throws IOException, ClassNotFoundException {
-        Object obj = null;
-        byte[] serializedSession = null;
-        if(result != null) {
-            if(result.getStatus() != StateServerResult.Success) {
-                return null;
-            } else if(result.isCachedObjectValid()) {
-                obj = result.getCachedObject();
-            } else {
-                serializedSession = result.getBytes();
-            }
-        }
-        if (obj != null) {
-            return (ScaleoutSession) obj;
+    // the object read may be the instance held by the client cache and shared by concurrent readers, so it is treated
+    // as an immutable snapshot and every caller gets its own copy-on-write view of it, with shared values resolved
+    private ScaleoutSession toSession(Object readResult) {
+        ScaleoutSession snapshot = (ScaleoutSession) readResult;
+        if(snapshot == null) return null;
+        ScaleoutSession session = new ScaleoutSession(snapshot);
+        if(session.isShortLived()) {
+            _shortLivedSessionsSeen = true;
         }
-        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serializedSession));
-        obj = ois.readObject();
-        ois.close();
-        return (ScaleoutSession) obj;
+        _sharedValues.resolveReferences(session, _store);
+        return session;
+    }
+
+    // private helper to create the form of a session that is stored -- a snapshot with shared values replaced by references
+    private ScaleoutSession storedForm(ScaleoutSession session) {
+        ScaleoutSession snapshot = session.snapshot();
+        _sharedValues.replaceWithReferences(snapshot, _store);
+        return snapshot;
     }
 
     // private helper method to delete a session and handles local cleanup
 	private void delete(String s) {
 	    if(s == null) return;
         try {
-            DataAccessor da = null;
+            SessionStore.Accessor da = null;
             if(_useLocking) {
-                da = _sessionAccessors.remove(s);
+                da = removeLockedAccessor(s);
             }
 
             if(da == null) {
                 da = getDA(s);
             }
-            da.delete();
-        } catch (StateServerException e) {
+            if(da != null) {
+                da.delete();
+            }
+        } catch (SessionStoreException e) {
             logger.error("Error thrown deleting session.", e);
         }
     }
 
+    /**
+     * The copy of a session stored while the session is promoted to the full timeout. The session is wrapped so the
+     * copy isn't found by index queries and scans.
+     */
+    private static final class PromotionCopy implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final ScaleoutSession session;
+
+        PromotionCopy(ScaleoutSession session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * A serialized session and its remaining time to live, as written to a session export.
+     */
+    private static final class ExportRecord {
+        private final long remainingMillis;
+        private final byte[] bytes;
+
+        ExportRecord(long remainingMillis, byte[] bytes) {
+            this.remainingMillis = remainingMillis;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * A DA holding the lock ticket of a session and the time the lock was acquired.
+     */
+    private static final class LockedAccessor {
+        private final SessionStore.Accessor da;
+        private final long lockedAt;
+
+        LockedAccessor(SessionStore.Accessor da) {
+            this.da = da;
+            this.lockedAt = System.currentTimeMillis();
+        }
+    }
+
     /**
      * Static helper class to resolve the PRINCIPAL_NAME_INDEX_NAME OR SPRING_SECURITY_CONTEXT. This class is used to
      * set the principal name (annotated SossIndexAttribute method) in {@link org.springframework.session.soss.ScaleoutSession}.
      */
     static class PrincipalNameResolver {
-        private SpelExpressionParser parser = new SpelExpressionParser();
+        // parsed once, expressions are thread-safe to evaluate
+        private final Expression _expression = new SpelExpressionParser().parseExpression("authentication?.name");
 
         public String resolvePrincipal(Session session) {
             String principalName = session.getAttribute(PRINCIPAL_NAME_INDEX_NAME);
@@ -491,8 +2246,7 @@ public class ScaleoutSessionRepository implements FindByIndexNameSessionReposito
             }
             Object authentication = session.getAttribute(SPRING_SECURITY_CONTEXT);
             if (authentication != null) {
-                Expression expression = this.parser.parseExpression("authentication?.name");
-                return expression.getValue(authentication, String.class);
+                return _expression.getValue(authentication, String.class);
             }
             return null;
         }
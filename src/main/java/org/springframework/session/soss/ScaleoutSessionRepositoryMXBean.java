@@ -0,0 +1,219 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX management interface of a {@link ScaleoutSessionRepository}. The repository is registered under
+ * <code>org.springframework.session.soss:type=ScaleoutSessionRepository,name=&lt;cacheName&gt;</code>.
+ *
+ * <p>
+ *     Retry and timeout settings changed through this interface apply to operations that start after the change;
+ *     operations in flight complete with the settings they started with.
+ * </p>
+ */
+public interface ScaleoutSessionRepositoryMXBean {
+
+    /**
+     * Retrieves the number of operations performed, by operation.
+     * @return the operation counts
+     */
+    Map<String, Long> getOperationCounts();
+
+    /**
+     * Retrieves the average latency in milliseconds, by operation.
+     * @return the average latencies
+     */
+    Map<String, Double> getAverageLatencyMillis();
+
+    /**
+     * Retrieves the maximum latency in milliseconds, by operation.
+     * @return the maximum latencies
+     */
+    Map<String, Double> getMaxLatencyMillis();
+
+    /**
+     * Resets the operation counts and latencies.
+     */
+    void resetStatistics();
+
+    /**
+     * Retrieves the sessions with the highest recent access rate, in accesses per second over the last one to two
+     * profiling windows of one minute. Session ids are reported as a truncated SHA-256 hash.
+     * @return the hashed session ids and access rates
+     */
+    Map<String, Double> getHotSessionsByAccessRate();
+
+    /**
+     * Retrieves the sessions on which requests recently spent the most time, in milliseconds, waiting for the session
+     * lock. Session ids are reported as a truncated SHA-256 hash.
+     * @return the hashed session ids and lock wait times
+     */
+    Map<String, Long> getHotSessionsByLockWaitMillis();
+
+    /**
+     * Retrieves the sessions with the most recent retries because the session was locked by another request. Session
+     * ids are reported as a truncated SHA-256 hash.
+     * @return the hashed session ids and lock retry counts
+     */
+    Map<String, Long> getHotSessionsByLockRetries();
+
+    /**
+     * Resets the hot-session profiler.
+     */
+    void resetProfiler();
+
+    /**
+     * Retrieves the sampled serialized sizes of session attributes per attribute name and value class, largest first.
+     * The entry named "*" describes whole sessions.
+     * @return the attribute size statistics
+     */
+    List<AttributeSizeStatistics> getAttributeSizeStatistics();
+
+    /**
+     * Resets the attribute size statistics.
+     */
+    void resetAttributeSizeStatistics();
+
+    /**
+     * Retrieves the sessions currently locked by this repository and how long, in milliseconds, each lock has been held.
+     * Session ids are redacted to a truncated SHA-256 hash, like the ids of {@link #getHotSessionsByAccessRate()}, so
+     * live session ids are not exposed.
+     * @return the redacted locked session ids and lock hold times
+     */
+    Map<String, Long> getLockedSessions();
+
+    /**
+     * Retrieves the number of sessions currently locked by this repository.
+     * @return the number of locked sessions
+     */
+    int getLockedSessionCount();
+
+    /**
+     * Releases the lock held by this repository for a session. The request that owns the lock will not be able to
+     * save the session with its lock ticket and will fall back to an unlocked update.
+     * @param sessionId the session id, or its redacted form as listed by {@link #getLockedSessions()}
+     * @return true if a lock was held and released
+     */
+    boolean releaseLock(String sessionId);
+
+    /**
+     * Releases all locks that have been held by this repository for longer than the parameter time.
+     * @param millis the minimum lock hold time in milliseconds
+     * @return the number of locks released
+     */
+    int releaseLocksHeldLongerThan(long millis);
+
+    /**
+     * Retrieves the number of unlocked reads served from the GeoServer local replica within the staleness bound.
+     * @return the number of local replica reads
+     */
+    long getLocalReplicaReads();
+
+    /**
+     * Retrieves the number of local replica reads that were older than the staleness bound and fell back to a
+     * remote read.
+     * @return the number of stale local replica reads
+     */
+    long getStaleReplicaReads();
+
+    /**
+     * Retrieves the number of reads performed with remote read enabled, i.e. reads that may pull the object over
+     * the WAN.
+     * @return the number of remote reads
+     */
+    long getRemoteReads();
+
+    /**
+     * Retrieves the number of shared attribute values resolved from the repository's cache.
+     * @return the number of shared value cache hits
+     */
+    long getSharedValueCacheHits();
+
+    /**
+     * Retrieves the number of shared attribute values read from the store because they were not cached.
+     * @return the number of shared value cache misses
+     */
+    long getSharedValueCacheMisses();
+
+    /**
+     * Retrieves the staleness bound in milliseconds of unlocked reads served from the GeoServer local replica.
+     * @return the staleness bound, zero always reads the remote object
+     */
+    long getMaxStalenessMillis();
+
+    /**
+     * Sets the staleness bound in milliseconds of unlocked reads served from the GeoServer local replica.
+     * @param millis the staleness bound, zero always reads the remote object
+     */
+    void setMaxStalenessMillis(long millis);
+
+    /**
+     * Retrieves the interval in milliseconds between remote store read retries.
+     * @return the remote read retry interval
+     */
+    int getRemoteReadPendingRetryInterval();
+
+    /**
+     * Sets the interval in milliseconds between remote store read retries.
+     * @param interval the remote read retry interval
+     */
+    void setRemoteReadPendingRetryInterval(int interval);
+
+    /**
+     * Retrieves the maximum number of remote store read retries.
+     * @return the maximum number of remote read retries
+     */
+    int getMaxRemoteReadRetries();
+
+    /**
+     * Sets the maximum number of remote store read retries.
+     * @param retries the maximum number of remote read retries
+     */
+    void setMaxRemoteReadRetries(int retries);
+
+    /**
+     * Retrieves the interval in milliseconds to wait before retrying to lock a session that is locked by another request.
+     * @return the lock retry interval
+     */
+    int getLockRetryInterval();
+
+    /**
+     * Sets the interval in milliseconds to wait before retrying to lock a session that is locked by another request.
+     * @param interval the lock retry interval, zero retries immediately
+     */
+    void setLockRetryInterval(int interval);
+
+    /**
+     * Retrieves the time in milliseconds to wait for a session that is locked by another request.
+     * @return the lock timeout
+     */
+    long getLockTimeout();
+
+    /**
+     * Sets the time in milliseconds to wait for a session that is locked by another request.
+     * @param timeout the lock timeout, zero waits indefinitely
+     */
+    void setLockTimeout(long timeout);
+
+    /**
+     * Retrieves whether the connection to the ScaleOut StateServer store is established and warmed up.
+     * @return true if the session store is ready
+     */
+    boolean isStoreReady();
+}
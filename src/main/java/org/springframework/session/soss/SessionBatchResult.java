@@ -0,0 +1,110 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+/**
+ * The result for one session of a batch operation of the {@link ScaleoutSessionRepository}, see
+ * {@link ScaleoutSessionRepository#findAllById(java.util.Collection)} and
+ * {@link ScaleoutSessionRepository#saveAll(java.util.Collection)}.
+ */
+public final class SessionBatchResult {
+
+    /**
+     * Outcome of a batch operation for one session.
+     */
+    public enum Status {
+        /**
+         * The session was found (and, if locking is enabled, locked).
+         */
+        FOUND,
+        /**
+         * The session was saved.
+         */
+        SAVED,
+        /**
+         * The session does not exist.
+         */
+        MISSING,
+        /**
+         * The session was expired and has been deleted.
+         */
+        EXPIRED,
+        /**
+         * The session is locked by another request or client -- the batch does not wait for locks.
+         */
+        LOCKED,
+        /**
+         * The operation failed, see the log for details.
+         */
+        FAILED,
+        /**
+         * The operation was not attempted because the thread running the batch was interrupted.
+         */
+        SKIPPED
+    }
+
+    private static final SessionBatchResult SAVED = new SessionBatchResult(Status.SAVED, null);
+    private static final SessionBatchResult MISSING = new SessionBatchResult(Status.MISSING, null);
+    private static final SessionBatchResult EXPIRED = new SessionBatchResult(Status.EXPIRED, null);
+    private static final SessionBatchResult LOCKED = new SessionBatchResult(Status.LOCKED, null);
+    private static final SessionBatchResult FAILED = new SessionBatchResult(Status.FAILED, null);
+    private static final SessionBatchResult SKIPPED = new SessionBatchResult(Status.SKIPPED, null);
+
+    private final Status _status;
+    private final ScaleoutSession _session;
+
+    private SessionBatchResult(Status status, ScaleoutSession session) {
+        _status = status;
+        _session = session;
+    }
+
+    static SessionBatchResult found(ScaleoutSession session) {
+        return new SessionBatchResult(Status.FOUND, session);
+    }
+
+    static SessionBatchResult of(Status status) {
+        switch (status) {
+            case SAVED: return SAVED;
+            case MISSING: return MISSING;
+            case EXPIRED: return EXPIRED;
+            case LOCKED: return LOCKED;
+            case FAILED: return FAILED;
+            case SKIPPED: return SKIPPED;
+            default: throw new IllegalArgumentException("A found result requires the session.");
+        }
+    }
+
+    /**
+     * Retrieves the outcome of the operation.
+     * @return the status
+     */
+    public Status getStatus() {
+        return _status;
+    }
+
+    /**
+     * Retrieves the session found.
+     * @return the session if the status is {@link Status#FOUND}, otherwise null
+     */
+    public ScaleoutSession getSession() {
+        return _session;
+    }
+
+    @Override
+    public String toString() {
+        return _status.name();
+    }
+}
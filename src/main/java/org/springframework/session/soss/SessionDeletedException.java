@@ -0,0 +1,33 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+/**
+ * Thrown by {@link ScaleoutSessionRepository#save(ScaleoutSession)} when the session was deleted by a bulk delete, such
+ * as {@link ScaleoutSessionRepository#deleteByPrincipalName(String)}, while the saving request held its lock. The
+ * session is not recreated, so the changes made by the request are lost and the request should fail.
+ */
+public class SessionDeletedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Instantiates a SessionDeletedException.
+     * @param message the detail message
+     */
+    public SessionDeletedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.session.Session;
+
+import java.util.function.Function;
+
+/**
+ * Resolves the value of a secondary index from a {@link Session}. Extractors are added to the
+ * {@link ScaleoutSessionRepository} through {@link ScaleoutSessionRepository#addIndex(String, Function)} or declared
+ * through {@link org.springframework.session.soss.config.annotation.web.http.EnableScaleoutHttpSession#indexedAttributes()}.
+ */
+public final class SessionIndexExtractor implements Function<Session, String> {
+    private static final SpelExpressionParser PARSER = new SpelExpressionParser();
+
+    private final String _attributeName;
+    private final Expression _expression;
+
+    private SessionIndexExtractor(String attributeName, Expression expression) {
+        _attributeName = attributeName;
+        _expression = expression;
+    }
+
+    /**
+     * Creates an extractor that indexes the string value of a session attribute.
+     * @param attributeName the name of the session attribute
+     * @return the extractor
+     */
+    public static SessionIndexExtractor forAttribute(String attributeName) {
+        return new SessionIndexExtractor(attributeName, null);
+    }
+
+    /**
+     * Creates an extractor that indexes the string value of a SpEL expression evaluated against the session, e.g.
+     * <code>getAttribute('SPRING_SECURITY_CONTEXT')?.authentication?.details?.sessionId</code>.
+     * @param expression the SpEL expression
+     * @return the extractor
+     */
+    public static SessionIndexExtractor forExpression(String expression) {
+        return new SessionIndexExtractor(null, PARSER.parseExpression(expression));
+    }
+
+    /**
+     * Parses an index definition of the form <code>indexName</code>, which indexes the session attribute with the
+     * same name, or <code>indexName=expression</code>, which indexes the value of a SpEL expression.
+     * @param definition the index definition
+     * @return the index name and extractor
+     */
+    public static Definition parse(String definition) {
+        int separator = definition.indexOf('=');
+        if(separator < 0) {
+            String name = definition.trim();
+            return new Definition(name, forAttribute(name));
+        }
+        return new Definition(definition.substring(0, separator).trim(), forExpression(definition.substring(separator + 1).trim()));
+    }
+
+    /**
+     * Resolves the index value of a session.
+     * @param session the session
+     * @return the index value or null
+     */
+    @Override
+    public String apply(Session session) {
+        Object value = _expression != null ? _expression.getValue(session) : session.getAttribute(_attributeName);
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * An index name and the extractor resolving its values.
+     */
+    public static final class Definition {
+        private final String _indexName;
+        private final SessionIndexExtractor _extractor;
+
+        private Definition(String indexName, SessionIndexExtractor extractor) {
+            _indexName = indexName;
+            _extractor = extractor;
+        }
+
+        /**
+         * Retrieves the index name.
+         * @return the index name
+         */
+        public String getIndexName() {
+            return _indexName;
+        }
+
+        /**
+         * Retrieves the extractor.
+         * @return the extractor
+         */
+        public SessionIndexExtractor getExtractor() {
+            return _extractor;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Package private callback interface used by the {@link ScaleoutSessionRepository} to notify interested components,
+ * such as the {@link ScaleoutSessionRegistry}, of session lifecycle events. Every listener added to the repository is
+ * notified.
+ */
+interface SessionLifecycleListener {
+
+    /**
+     * Called after a session has been retrieved from the store.
+     * @param session the retrieved session
+     */
+    void sessionAccessed(ScaleoutSession session);
+
+    /**
+     * Called after a session has been saved under a new id.
+     * @param oldIds the ids previously associated with the session
+     * @param session the saved session
+     */
+    void sessionIdChanged(List<String> oldIds, ScaleoutSession session);
+
+    /**
+     * Called after a session has been deleted or found expired.
+     * @param id the id of the deleted session
+     */
+    void sessionDeleted(String id);
+
+    /**
+     * Called after a bulk delete of sessions.
+     * @param principalName the principal whose sessions were deleted, or null if the sessions were selected by a filter
+     * @param ids the ids of the deleted sessions
+     */
+    default void sessionsDeleted(String principalName, Collection<String> ids) {
+        for(String id : ids) {
+            sessionDeleted(id);
+        }
+    }
+}
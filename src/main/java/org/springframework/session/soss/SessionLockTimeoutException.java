@@ -0,0 +1,33 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+/**
+ * Thrown by {@link ScaleoutSessionRepository#findById(String)} when the session is locked by another request for
+ * longer than the configured lock timeout, see {@link ScaleoutSessionRepository#setLockTimeout(long)}. The session
+ * exists but could not be locked, so the request should fail rather than continue as if it had no session.
+ */
+public class SessionLockTimeoutException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Instantiates a SessionLockTimeoutException.
+     * @param message the detail message
+     */
+    public SessionLockTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Package private always-on profiler that identifies hot sessions, i.e. sessions accessed by many requests or
+ * contended by parallel requests. The profiler tracks the top sessions by access count, time spent waiting for the
+ * session lock and lock retries over the last one to two windows in fixed-memory {@link HeavyHitters} sketches. The
+ * sketches hold the session ids as they are, so recording is cheap; ids are only reported as a truncated SHA-256
+ * hash, so they can be matched against a known id without being disclosed.
+ */
+class SessionProfiler {
+    /**
+     * Number of sessions tracked per metric.
+     */
+    static final int DEF_CAPACITY = 128;
+    /**
+     * Number of sessions reported per metric.
+     */
+    static final int DEF_TOP_N = 10;
+    /**
+     * Length of a profiling window.
+     */
+    static final Duration DEF_WINDOW = Duration.ofMinutes(1);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // number of hash bytes reported per session id
+    private static final int HASH_BYTES = 8;
+
+    private final HeavyHitters _accesses = new HeavyHitters(DEF_CAPACITY, DEF_WINDOW);
+    private final HeavyHitters _lockWaitMillis = new HeavyHitters(DEF_CAPACITY, DEF_WINDOW);
+    private final HeavyHitters _lockRetries = new HeavyHitters(DEF_CAPACITY, DEF_WINDOW);
+    private volatile long _startNanos = System.nanoTime();
+
+    /**
+     * Records an access of a session.
+     * @param id the session id
+     * @param lockWaitNanos the time spent waiting for the session lock
+     * @param lockRetries the number of retries because the session was locked
+     */
+    void recordAccess(String id, long lockWaitNanos, int lockRetries) {
+        _accesses.add(id, 1);
+        addContention(id, lockWaitNanos, lockRetries);
+    }
+
+    /**
+     * Records lock contention on a session outside of a read, e.g. while saving.
+     * @param id the session id
+     * @param lockWaitNanos the time spent waiting for the session lock
+     * @param lockRetries the number of retries because the session was locked
+     */
+    void recordContention(String id, long lockWaitNanos, int lockRetries) {
+        if(lockRetries > 0) {
+            addContention(id, lockWaitNanos, lockRetries);
+        }
+    }
+
+    private void addContention(String id, long lockWaitNanos, long lockRetries) {
+        if(lockRetries > 0) {
+            _lockRetries.add(id, lockRetries);
+            _lockWaitMillis.add(id, Math.max(1, TimeUnit.NANOSECONDS.toMillis(lockWaitNanos)));
+        }
+    }
+
+    /**
+     * Retrieves the sessions with the highest recent access rate, in accesses per second over the time covered by
+     * the profiling windows, or since the profiler was reset if that is shorter.
+     * @return the redacted session ids and access rates
+     */
+    Map<String, Double> topAccessRates() {
+        long coveredNanos = Math.min(_accesses.coveredNanos(), System.nanoTime() - _startNanos);
+        double seconds = Math.max(1.0, coveredNanos / (double) TimeUnit.SECONDS.toNanos(1));
+        Map<String, Double> rates = new LinkedHashMap<>();
+        _accesses.top(DEF_TOP_N).forEach((id, count) -> rates.put(redact(id), count / seconds));
+        return rates;
+    }
+
+    Map<String, Long> topLockWaitMillis() {
+        return redacted(_lockWaitMillis.top(DEF_TOP_N));
+    }
+
+    Map<String, Long> topLockRetries() {
+        return redacted(_lockRetries.top(DEF_TOP_N));
+    }
+
+    void reset() {
+        _accesses.clear();
+        _lockWaitMillis.clear();
+        _lockRetries.clear();
+        _startNanos = System.nanoTime();
+    }
+
+    // private helper method to redact the session ids of a top list, keeping the order
+    private static Map<String, Long> redacted(Map<String, Long> top) {
+        Map<String, Long> redacted = new LinkedHashMap<>();
+        top.forEach((id, count) -> redacted.put(redact(id), count));
+        return redacted;
+    }
+
+    /**
+     * Redacts a session id to a truncated hex SHA-256 hash.
+     * @param id the session id
+     * @return the redacted id
+     */
+    static String redact(String id) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(id.getBytes(StandardCharsets.UTF_8));
+            char[] chars = new char[HASH_BYTES * 2];
+            for(int i = 0; i < HASH_BYTES; i++) {
+                chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+                chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+            }
+            return new String(chars);
+        } catch (NoSuchAlgorithmException e) {
+            return "unavailable";
+        }
+    }
+}
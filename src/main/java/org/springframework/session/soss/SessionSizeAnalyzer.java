@@ -0,0 +1,174 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Package private sampled accounting of the serialized size of session attributes. Sizes are aggregated per attribute
+ * name and value class in fixed-size power-of-two histograms, so memory use does not grow with the number of samples.
+ */
+class SessionSizeAnalyzer {
+    // maximum number of attribute name and value class combinations tracked
+    private static final int MAX_TRACKED_ATTRIBUTES = 1024;
+    // name used for the statistics of whole sessions
+    static final String SESSION_TOTAL = "*";
+
+    private final ConcurrentHashMap<List<String>, Histogram> _histograms = new ConcurrentHashMap<>();
+    private final AtomicLong _saves = new AtomicLong();
+    private volatile int _sampleRate = ScaleoutSessionRepository.DEF_SIZE_SAMPLE_RATE;
+
+    void setSampleRate(int sampleRate) {
+        _sampleRate = sampleRate;
+    }
+
+    /**
+     * Returns true if the current save should be sampled.
+     * @return true to sample
+     */
+    boolean shouldSample() {
+        int rate = _sampleRate;
+        return rate > 0 && _saves.incrementAndGet() % rate == 0;
+    }
+
+    /**
+     * Records the attribute sizes of a sampled session.
+     * @param session the session
+     * @param sizes the serialized size of each attribute
+     */
+    void record(ScaleoutSession session, Map<String, Long> sizes) {
+        long total = 0;
+        for(Map.Entry<String, Long> size : sizes.entrySet()) {
+            Object value = session.getAttribute(size.getKey());
+            String valueClass = value != null ? value.getClass().getName() : "null";
+            histogram(size.getKey(), valueClass).record(size.getValue());
+            total += size.getValue();
+        }
+        histogram(SESSION_TOTAL, ScaleoutSession.class.getName()).record(total);
+    }
+
+    /**
+     * Retrieves the size statistics, largest maximum first.
+     * @return the statistics
+     */
+    List<AttributeSizeStatistics> statistics() {
+        List<AttributeSizeStatistics> statistics = new ArrayList<>();
+        _histograms.forEach((key, histogram) -> statistics.add(histogram.statistics(key.get(0), key.get(1))));
+        statistics.sort((a, b) -> Long.compare(b.getMaxBytes(), a.getMaxBytes()));
+        return statistics;
+    }
+
+    void reset() {
+        _histograms.clear();
+    }
+
+    /**
+     * Measures the serialized size of every attribute of a session. The stream is reset before each attribute, so an
+     * attribute's size includes its own class descriptors and doesn't depend on the attributes written before it.
+     * Sizes may therefore add up to more than the stored session, where descriptors are written once.
+     * @param session the session, in the form it is stored
+     * @return the attribute names and serialized sizes, attributes that can't be serialized are omitted
+     */
+    static Map<String, Long> measure(ScaleoutSession session) {
+        Map<String, Long> sizes = new HashMap<>();
+        CountingOutputStream counter = new CountingOutputStream();
+        ObjectOutputStream oos = null;
+        for(String name : session.getAttributeNames()) {
+            try {
+                if(oos == null) {
+                    oos = new ObjectOutputStream(counter);
+                } else {
+                    oos.reset();
+                }
+                oos.flush();
+                long start = counter.count;
+                oos.writeObject(session.getAttribute(name));
+                oos.flush();
+                sizes.put(name, counter.count - start);
+            } catch (IOException e) {
+                // the stream is unusable after a failed write -- continue with a new one
+                oos = null;
+            }
+        }
+        return sizes;
+    }
+
+    private Histogram histogram(String name, String valueClass) {
+        List<String> key = Arrays.asList(name, valueClass);
+        Histogram histogram = _histograms.get(key);
+        if(histogram == null) {
+            if(_histograms.size() >= MAX_TRACKED_ATTRIBUTES) {
+                // too many distinct attributes -- record into a shared overflow bucket
+                key = Arrays.asList("(other)", "(other)");
+            }
+            histogram = _histograms.computeIfAbsent(key, k -> new Histogram());
+        }
+        return histogram;
+    }
+
+    // power-of-two histogram: bucket i counts sizes in [2^i, 2^(i+1))
+    private static class Histogram {
+        private final AtomicLongArray _buckets = new AtomicLongArray(64);
+        private final AtomicLong _count = new AtomicLong();
+        private final AtomicLong _max = new AtomicLong();
+
+        void record(long size) {
+            _buckets.incrementAndGet(size <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(size));
+            _count.incrementAndGet();
+            _max.accumulateAndGet(size, Math::max);
+        }
+
+        AttributeSizeStatistics statistics(String name, String valueClass) {
+            long count = _count.get();
+            long max = _max.get();
+            return new AttributeSizeStatistics(name, valueClass, count, percentile(count, 0.50, max), percentile(count, 0.99, max), max);
+        }
+
+        // upper bound of the bucket containing the percentile, capped at the maximum
+        private long percentile(long count, double percentile, long max) {
+            long rank = (long) Math.ceil(count * percentile);
+            long seen = 0;
+            for(int i = 0; i < _buckets.length(); i++) {
+                seen += _buckets.get(i);
+                if(seen >= rank && seen > 0) {
+                    return Math.min(max, i >= 62 ? Long.MAX_VALUE : (2L << i) - 1);
+                }
+            }
+            return max;
+        }
+    }
+
+    // output stream which only counts the bytes written to it
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
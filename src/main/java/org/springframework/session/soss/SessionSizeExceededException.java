@@ -0,0 +1,32 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+/**
+ * Thrown by {@link ScaleoutSessionRepository#save(ScaleoutSession)} when a session exceeds its size budgets and the
+ * {@link SizeBudgetPolicy#REJECT} policy is configured. The session is not saved and its lock is released.
+ */
+public class SessionSizeExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Instantiates a SessionSizeExceededException.
+     * @param message the detail message
+     */
+    public SessionSizeExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Storage seam of the {@link ScaleoutSessionRepository}. The repository reads, locks, writes and queries sessions
+ * through this interface. The default implementation is backed by ScaleOut StateServer, and
+ * {@link EmbeddedSessionStore} keeps sessions in-process for single-instance deployments and tests. The semantics
+ * follow StateServer's DataAccessor and NamedCache APIs, but the interface doesn't expose StateServer client types.
+ * Query filters are only evaluated by the StateServer store.
+ */
+public interface SessionStore {
+
+    /**
+     * Creates an accessor for the object stored under the parameter key. An accessor that locked the object on read
+     * holds the lock ticket, so the update or delete releasing the lock must be made through the same accessor.
+     * @param key the key
+     * @return the accessor
+     * @throws SessionStoreException if the accessor couldn't be created
+     */
+    Accessor accessor(String key) throws SessionStoreException;
+
+    /**
+     * Retrieves the keys of the sessions whose {@link com.scaleoutsoftware.soss.client.SossIndexAttribute} property
+     * equals the parameter value.
+     * @param property the name of the index property of {@link ScaleoutSession}
+     * @param value the value
+     * @return the matching keys
+     * @throws SessionStoreException if the query failed
+     */
+    Set<String> queryKeys(String property, String value) throws SessionStoreException;
+
+    /**
+     * Releases resources held by the store. Called when the repository shuts down.
+     */
+    default void close() {
+    }
+
+    /**
+     * Options of {@link Accessor#read(Set)}.
+     */
+    enum ReadOption {
+        /**
+         * Return null instead of failing if the object doesn't exist.
+         */
+        OBJECT_MAY_NOT_EXIST,
+        /**
+         * Lock the object if the accessor locks when reading.
+         */
+        LOCK_OBJECT,
+        /**
+         * Return the cached instance if the object is unchanged.
+         */
+        RETURN_CACHED_OBJECT_IF_VALID,
+        /**
+         * Read the object from the remote store if it isn't stored locally.
+         */
+        READ_REMOTE_OBJECT
+    }
+
+    /**
+     * Accessor for a single stored object.
+     */
+    interface Accessor {
+
+        /**
+         * Sets whether reads with {@link ReadOption#LOCK_OBJECT} lock the object.
+         * @param lockedWhenReading true to lock on read
+         */
+        void setLockedWhenReading(boolean lockedWhenReading);
+
+        /**
+         * Reads the object. The returned instance may be shared with other readers when
+         * {@link ReadOption#RETURN_CACHED_OBJECT_IF_VALID} is set and must not be modified.
+         * @param options the read options
+         * @return the object, or null if it doesn't exist
+         * @throws SessionStoreException.Locked if the object is locked by another accessor
+         * @throws SessionStoreException.ReadPending if the object is being pulled from a remote store
+         * @throws SessionStoreException if the read failed
+         */
+        Object read(Set<ReadOption> options) throws SessionStoreException;
+
+        /**
+         * Creates the object.
+         * @param timeout the sliding timeout of the object
+         * @param value the object
+         * @throws SessionStoreException.Exists if the object exists
+         * @throws SessionStoreException if the create failed
+         */
+        void create(Duration timeout, Object value) throws SessionStoreException;
+
+        /**
+         * Updates the object.
+         * @param value the object
+         * @param unlock true to release the lock held by this accessor
+         * @throws SessionStoreException.Locked if the object is locked by another accessor
+         * @throws SessionStoreException if the update failed
+         */
+        void update(Object value, boolean unlock) throws SessionStoreException;
+
+        /**
+         * Deletes the object, releasing a lock held by this accessor.
+         * @throws SessionStoreException if the delete failed
+         */
+        void delete() throws SessionStoreException;
+
+        /**
+         * Releases the lock held by this accessor.
+         * @throws SessionStoreException if the lock couldn't be released
+         */
+        void releaseLock() throws SessionStoreException;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+/**
+ * Thrown by a {@link SessionStore} when an operation fails. The nested subclasses signal the conditions the
+ * {@link ScaleoutSessionRepository} retries on.
+ */
+public class SessionStoreException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Instantiates a SessionStoreException.
+     * @param message the message describing the failure
+     */
+    public SessionStoreException(String message) {
+        super(message);
+    }
+
+    /**
+     * Instantiates a SessionStoreException.
+     * @param cause the exception thrown by the underlying store
+     */
+    public SessionStoreException(Throwable cause) {
+        super(cause);
+    }
+
+    /**
+     * The object is locked by another accessor.
+     */
+    public static class Locked extends SessionStoreException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Instantiates a Locked exception.
+         * @param cause the exception thrown by the underlying store
+         */
+        public Locked(Throwable cause) {
+            super(cause);
+        }
+
+        /**
+         * Instantiates a Locked exception.
+         * @param message the message describing the lock conflict
+         */
+        public Locked(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The object to create already exists.
+     */
+    public static class Exists extends SessionStoreException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Instantiates an Exists exception.
+         * @param cause the exception thrown by the underlying store
+         */
+        public Exists(Throwable cause) {
+            super(cause);
+        }
+
+        /**
+         * Instantiates an Exists exception.
+         * @param message the message describing the conflict
+         */
+        public Exists(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The object is being pulled from a remote store.
+     */
+    public static class ReadPending extends SessionStoreException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Instantiates a ReadPending exception.
+         * @param cause the exception thrown by the underlying store
+         */
+        public ReadPending(Throwable cause) {
+            super(cause);
+        }
+
+        /**
+         * Instantiates a ReadPending exception.
+         * @param message the message describing the pending read
+         */
+        public ReadPending(String message) {
+            super(message);
+        }
+    }
+}
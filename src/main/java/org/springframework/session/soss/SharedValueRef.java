@@ -0,0 +1,53 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import java.io.Serializable;
+
+/**
+ * Package private reference to a shared attribute value, stored in a session in place of the value. The value is
+ * stored once in the grid under the content hash -- and, for sessions with a longer max inactive interval than the
+ * repository, the interval its timeout is based on -- see {@link SharedValues}.
+ */
+final class SharedValueRef implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String _hash;
+    // max inactive interval in seconds the value's timeout is based on, 0 for the repository's max inactive time
+    private final long _intervalSeconds;
+
+    SharedValueRef(String hash) {
+        this(hash, 0);
+    }
+
+    SharedValueRef(String hash, long intervalSeconds) {
+        _hash = hash;
+        _intervalSeconds = intervalSeconds;
+    }
+
+    String hash() {
+        return _hash;
+    }
+
+    long intervalSeconds() {
+        return _intervalSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "SharedValueRef[" + _hash + (_intervalSeconds > 0 ? "@" + _intervalSeconds : "") + "]";
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.session.soss.SessionStore.ReadOption;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Package private content-addressed store of shared session attribute values. Values of the attributes opted in with
+ * {@link #addAttribute(String)} are stored once in the grid under the SHA-256 hash of their serialized form, and the
+ * stored session holds a {@link SharedValueRef} instead. Resolved values are kept in a bounded LRU cache, so reading
+ * a session usually doesn't touch the grid for its shared values.
+ *
+ * <p>
+ *     Shared values are reclaimed by their sliding timeout, which is one and a half times the max inactive interval
+ *     of the referencing sessions. Values referenced by sessions with a longer max inactive interval than the
+ *     repository are stored separately, under the hash and that interval, with a timeout based on it. Saving or
+ *     reading a session that references a value refreshes the value's timeout at least every half interval, so a
+ *     value outlives every session referencing it. Shared values must be immutable: the cached instance is handed to
+ *     every session referencing it.
+ * </p>
+ * <p>
+ *     Java serialization is not canonical: equal HashMap or HashSet instances, for example, may serialize their
+ *     entries in a different order depending on their capacity and insertion history. Equal values then hash
+ *     differently and are stored once per distinct serialized form. Values with a deterministic serialized form, such
+ *     as strings, lists or sorted maps, deduplicate reliably.
+ * </p>
+ */
+class SharedValues {
+    private static final Log logger = LogFactory.getLog(SharedValues.class);
+
+    // key prefix of shared values in the store
+    private static final String KEY_PREFIX = "shared:";
+    private static final Set<ReadOption> READ_OPTIONS = EnumSet.of(ReadOption.OBJECT_MAY_NOT_EXIST, ReadOption.RETURN_CACHED_OBJECT_IF_VALID);
+
+    private final Set<String> _attributeNames = new CopyOnWriteArraySet<>();
+    private final Duration _maxInactiveTime;
+    private final Cache _cache;
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+
+    /**
+     * Instantiates the shared value store.
+     * @param maxInactiveTime the max inactive time of the sessions referencing shared values
+     * @param cacheSize the maximum number of resolved values cached
+     */
+    SharedValues(Duration maxInactiveTime, int cacheSize) {
+        _maxInactiveTime = maxInactiveTime;
+        _cache = new Cache(cacheSize);
+    }
+
+    void addAttribute(String attributeName) {
+        _attributeNames.add(attributeName);
+    }
+
+    void setCacheSize(int cacheSize) {
+        _cache.resize(cacheSize);
+    }
+
+    boolean isEmpty() {
+        return _attributeNames.isEmpty();
+    }
+
+    long hits() {
+        return _hits.sum();
+    }
+
+    long misses() {
+        return _misses.sum();
+    }
+
+    /**
+     * Replaces the values of the shared attributes of a session snapshot with references without storing the values,
+     * so the stored form of a session can be measured before it is known to be saved.
+     * @param snapshot the snapshot to measure
+     */
+    void replaceWithUnstoredReferences(ScaleoutSession snapshot) {
+        if(_attributeNames.isEmpty()) return;
+        long intervalSeconds = intervalSeconds(snapshot);
+        for(String name : _attributeNames) {
+            Object value = snapshot.getAttribute(name);
+            if(value == null || value instanceof SharedValueRef) continue;
+            String hash = _cache.hashOf(value);
+            if(hash == null) {
+                hash = hash(value);
+                if(hash == null) continue;
+            }
+            snapshot.setAttribute(name, new SharedValueRef(hash, intervalSeconds));
+        }
+    }
+
+    /**
+     * Replaces the values of the shared attributes of a session snapshot with references, storing the values that
+     * haven't been stored (or refreshed) recently. A value that can't be stored stays in the session.
+     * @param snapshot the snapshot about to be stored
+     * @param store the store
+     */
+    void replaceWithReferences(ScaleoutSession snapshot, SessionStore store) {
+        if(_attributeNames.isEmpty()) return;
+        long intervalSeconds = intervalSeconds(snapshot);
+        for(String name : _attributeNames) {
+            Object value = snapshot.getAttribute(name);
+            if(value == null || value instanceof SharedValueRef) continue;
+            String hash = _cache.hashOf(value);
+            if(hash == null) {
+                hash = hash(value);
+                if(hash == null) continue;
+            }
+            SharedValueRef ref = new SharedValueRef(hash, intervalSeconds);
+            if(ensureStored(ref, value, store)) {
+                snapshot.setAttribute(name, ref);
+            }
+        }
+    }
+
+    /**
+     * Replaces the references in a session view with the shared values. An attribute whose value no longer exists is
+     * removed.
+     * @param session the session view
+     * @param store the store
+     */
+    void resolveReferences(ScaleoutSession session, SessionStore store) {
+        List<Map.Entry<String, SharedValueRef>> references = null;
+        for(Map.Entry<String, Object> attribute : session.attributeView().entrySet()) {
+            if(attribute.getValue() instanceof SharedValueRef) {
+                if(references == null) {
+                    references = new ArrayList<>();
+                }
+                references.add(new AbstractMap.SimpleImmutableEntry<>(attribute.getKey(), (SharedValueRef) attribute.getValue()));
+            }
+        }
+        if(references == null) return;
+        for(Map.Entry<String, SharedValueRef> reference : references) {
+            Object value = resolve(reference.getValue(), store);
+            if(value != null) {
+                session.setAttribute(reference.getKey(), value);
+            } else {
+                logger.warn("Shared value of attribute " + reference.getKey() + " no longer exists, removing the attribute.");
+                session.removeAttribute(reference.getKey());
+            }
+        }
+    }
+
+    // helper method which resolves a shared value from the cache or the store. A cached value whose timeout hasn't
+    // been refreshed for half its interval is refreshed, so sessions that are only read keep their values alive.
+    private Object resolve(SharedValueRef ref, SessionStore store) {
+        String key = key(ref);
+        Object value = _cache.get(key);
+        if(value != null) {
+            _hits.increment();
+            ensureStored(ref, value, store);
+            return value;
+        }
+        _misses.increment();
+        try {
+            SessionStore.Accessor da = store.accessor(KEY_PREFIX + key);
+            da.setLockedWhenReading(false);
+            value = da.read(READ_OPTIONS);
+        } catch (SessionStoreException e) {
+            logger.error("Error thrown reading shared value.", e);
+            return null;
+        }
+        if(value != null) {
+            // the read refreshed the value's timeout
+            _cache.put(key, ref.hash(), value, System.currentTimeMillis());
+        }
+        return value;
+    }
+
+    // helper method which stores a shared value unless it was stored or refreshed recently -- false if it couldn't be stored
+    private boolean ensureStored(SharedValueRef ref, Object value, SessionStore store) {
+        String key = key(ref);
+        Duration interval = interval(ref);
+        long now = System.currentTimeMillis();
+        if(now - _cache.confirmedAt(key) < interval.dividedBy(2).toMillis()) {
+            return true;
+        }
+        Duration timeout = interval.plus(interval.dividedBy(2));
+        try {
+            SessionStore.Accessor da = store.accessor(KEY_PREFIX + key);
+            da.setLockedWhenReading(false);
+            try {
+                da.create(timeout, value);
+            } catch (SessionStoreException.Exists e) {
+                // stored by another session or client -- reading it refreshes its timeout
+                if(da.read(READ_OPTIONS) == null) {
+                    da.create(timeout, value);
+                }
+            }
+            _cache.put(key, ref.hash(), value, now);
+            return true;
+        } catch (SessionStoreException e) {
+            logger.warn("Couldn't store shared value, storing it in the session.", e);
+            return false;
+        }
+    }
+
+    // helper method which resolves the interval a session's shared values are kept for -- 0 for the repository's max
+    // inactive time, or the session's max inactive interval in seconds if it is longer
+    private long intervalSeconds(ScaleoutSession session) {
+        Duration interval = session.getMaxInactiveInterval();
+        return interval.compareTo(_maxInactiveTime) > 0 ? interval.getSeconds() : 0;
+    }
+
+    private Duration interval(SharedValueRef ref) {
+        return ref.intervalSeconds() > 0 ? Duration.ofSeconds(ref.intervalSeconds()) : _maxInactiveTime;
+    }
+
+    // helper method which resolves the key of a shared value, without the store prefix
+    private static String key(SharedValueRef ref) {
+        return ref.intervalSeconds() > 0 ? ref.hash() + "@" + ref.intervalSeconds() : ref.hash();
+    }
+
+    // helper method which computes the content hash of a value
+    private static String hash(Object value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+                oos.writeObject(value);
+            }
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray());
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for(byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            logger.warn("Couldn't hash shared value, storing it in the session.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Bounded LRU cache of resolved values by key, with a reverse identity index so the hash of a cached instance is
+     * found without serializing it.
+     */
+    private static final class Cache {
+        private final LinkedHashMap<String, Entry> _entries;
+        private final IdentityHashMap<Object, String> _hashes = new IdentityHashMap<>();
+        private int _maxSize;
+
+        Cache(int maxSize) {
+            _maxSize = maxSize;
+            _entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    if(size() > _maxSize) {
+                        _hashes.remove(eldest.getValue().value);
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        // changes the maximum size, evicting the least recently used values over it
+        synchronized void resize(int maxSize) {
+            _maxSize = maxSize;
+            Iterator<Entry> eldest = _entries.values().iterator();
+            while(_entries.size() > maxSize && eldest.hasNext()) {
+                _hashes.remove(eldest.next().value);
+                eldest.remove();
+            }
+        }
+
+        synchronized Object get(String key) {
+            Entry entry = _entries.get(key);
+            return entry != null ? entry.value : null;
+        }
+
+        synchronized String hashOf(Object value) {
+            return _hashes.get(value);
+        }
+
+        synchronized long confirmedAt(String key) {
+            Entry entry = _entries.get(key);
+            return entry != null ? entry.confirmedAt : 0;
+        }
+
+        synchronized void put(String key, String hash, Object value, long confirmedAt) {
+            Entry previous = _entries.get(key);
+            if(previous != null) {
+                // keep the cached instance -- sessions resolved earlier hold it
+                previous.confirmedAt = confirmedAt;
+                return;
+            }
+            _entries.put(key, new Entry(value, confirmedAt));
+            _hashes.put(value, hash);
+        }
+
+        private static final class Entry {
+            private final Object value;
+            private long confirmedAt;
+
+            Entry(Object value, long confirmedAt) {
+                this.value = value;
+                this.confirmedAt = confirmedAt;
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+/**
+ * Policy applied by the {@link ScaleoutSessionRepository} when a saved session exceeds its configured size budgets.
+ */
+public enum SizeBudgetPolicy {
+    /**
+     * Logs a warning and saves the session.
+     */
+    WARN,
+    /**
+     * Throws a {@link SessionSizeExceededException} and does not save the session.
+     */
+    REJECT,
+    /**
+     * Removes oversized attributes, largest first, until the session is within its budgets, logs a warning and saves
+     * the session.
+     */
+    DROP
+}
@@ -19,6 +19,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.session.soss.ScaleoutSession;
 import org.springframework.session.soss.ScaleoutSessionRepository;
+import org.springframework.session.soss.SizeBudgetPolicy;
 
 import java.lang.annotation.*;
 
@@ -87,4 +88,131 @@ public @interface EnableScaleoutHttpSession {
      * @return the maximum number of remote read retries
      */
     int maxRemoteReadRetries() default ScaleoutSessionRepository.DEF_REMOTE_READPENDING_RETRIES;
+
+    /**
+     * Sets whether the ScaleoutSessionRepository defers storing a new session until it qualifies for persistence, i.e.
+     * the session holds at least one attribute, has a principal or matches a Predicate&lt;ScaleoutSession&gt; bean.
+     * Sessions created by crawlers, health checks or first-time visitors are then never written to the store.
+     * @return whether or not to defer storing sessions that do not qualify for persistence
+     */
+    boolean deferUnqualifiedSessions() default ScaleoutSessionRepository.DEF_DEFER_UNQUALIFIED_SESSIONS;
+
+    /**
+     * Sets the timeout in minutes of stored sessions that do not qualify for persistence. When such a session later
+     * qualifies, it is moved to {@link EnableScaleoutHttpSession#maxInactiveTimeMinutes()}.
+     * @return the timeout of unqualified sessions in minutes, or 0 to use the max inactive time
+     */
+    int unqualifiedSessionTimeoutMinutes() default ScaleoutSessionRepository.DEF_UNQUALIFIED_SESSION_TIMEOUT;
+
+    /**
+     * Declares secondary indexes in addition to the principal name index. Each entry is either an attribute name,
+     * which indexes the string value of the session attribute with that name, or <code>indexName=expression</code>,
+     * which indexes the value of a SpEL expression evaluated against the session. Sessions can then be found through
+     * {@link ScaleoutSessionRepository#findByIndexNameAndIndexValue(String, String)} with the index name.
+     * At most {@link ScaleoutSession#MAX_SECONDARY_INDEXES} secondary indexes are supported. Indexes are stored in
+     * slots in declaration order, so every instance sharing the store must declare the same indexes in the same order.
+     * @return the secondary index definitions
+     */
+    String[] indexedAttributes() default {};
+
+    /**
+     * Note, requires {@link EnableScaleoutHttpSession#remoteStoreName()} to have a value.
+     *
+     * Sets the staleness bound in milliseconds of read-only requests, i.e. reads through
+     * {@link ScaleoutSessionRepository#findByIdReadOnly(String)}. Such a read is served from the local replica when
+     * the replica was saved within the bound, by the saving client's clock plus
+     * {@link ScaleoutSessionRepository#DEF_CLOCK_SKEW_ALLOWANCE}, and only falls back to a remote read (and a possible
+     * WAN pull) when the replica is missing or older. The bound is only as accurate as the client clocks agree, and a
+     * newer save may not have reached the replica yet. Other reads always read the remote object.
+     * @return the staleness bound in milliseconds, 0 always reads the remote object
+     */
+    long maxStalenessMillis() default ScaleoutSessionRepository.DEF_MAX_STALENESS;
+
+    /**
+     * Sets the interval in milliseconds the {@link ScaleoutSessionRepository} waits before retrying to lock a session
+     * that is locked by another request.
+     * @return the lock retry interval in milliseconds, 0 retries immediately
+     */
+    int lockRetryInterval() default ScaleoutSessionRepository.DEF_LOCK_RETRY_INTERVAL;
+
+    /**
+     * Sets the time in milliseconds the {@link ScaleoutSessionRepository} waits for a session that is locked by another
+     * request before giving up.
+     * @return the lock timeout in milliseconds, 0 waits indefinitely
+     */
+    long lockTimeout() default ScaleoutSessionRepository.DEF_LOCK_TIMEOUT;
+
+    /**
+     * Sets how often the {@link ScaleoutSessionRepository} samples the serialized size of session attributes. Sampled
+     * sizes are aggregated per attribute name and value class and exposed through JMX.
+     * @return the number of saves per sampled save, 0 disables sampling
+     */
+    int sizeSampleRate() default ScaleoutSessionRepository.DEF_SIZE_SAMPLE_RATE;
+
+    /**
+     * Sets the serialized size budget in bytes of a single session attribute, enforced on every save according to
+     * {@link EnableScaleoutHttpSession#sizeBudgetPolicy()}.
+     * @return the attribute size budget in bytes, 0 is unlimited
+     */
+    int maxAttributeBytes() default ScaleoutSessionRepository.DEF_MAX_ATTRIBUTE_BYTES;
+
+    /**
+     * Sets the serialized size budget in bytes of all attributes of a session, enforced on every save according to
+     * {@link EnableScaleoutHttpSession#sizeBudgetPolicy()}.
+     * @return the session size budget in bytes, 0 is unlimited
+     */
+    int maxSessionBytes() default ScaleoutSessionRepository.DEF_MAX_SESSION_BYTES;
+
+    /**
+     * Sets the policy applied when a saved session exceeds its size budgets.
+     * @return the size budget policy
+     */
+    SizeBudgetPolicy sizeBudgetPolicy() default SizeBudgetPolicy.WARN;
+
+    /**
+     * Sets whether the {@link ScaleoutSessionRepository} registers a
+     * {@link org.springframework.session.soss.ScaleoutSessionRepositoryMXBean} with the platform MBean server. The
+     * bean exposes operation counts and latencies, the sessions locked by the repository, operations to release
+     * stuck locks, and the retry and timeout settings, which can be changed at runtime.
+     * @return whether or not to register the management bean
+     */
+    boolean enableJmx() default ScaleoutSessionRepository.DEF_ENABLE_JMX;
+
+    /**
+     * Sets whether the {@link ScaleoutSessionRepository} connects to the ScaleOut StateServer store in the background.
+     * If true, application startup does not wait for the store; the connection is established and warmed up on a
+     * background thread and requests arriving earlier wait up to {@link EnableScaleoutHttpSession#readyTimeoutMillis()}
+     * for the store to become ready.
+     * @return whether or not to connect asynchronously
+     */
+    boolean asyncConnect() default ScaleoutSessionRepository.DEF_CONNECT_ASYNCHRONOUSLY;
+
+    /**
+     * Sets how long requests wait for an asynchronously connecting store before failing.
+     * @return the ready timeout in milliseconds
+     */
+    long readyTimeoutMillis() default ScaleoutSessionRepository.DEF_READY_TIMEOUT;
+
+    /**
+     * Declares attributes whose values are stored once in the ScaleOut StateServer store under the hash of their
+     * content instead of in every session, for large immutable values shared by many sessions such as tenant
+     * configuration or role catalogs. See {@link ScaleoutSessionRepository#addSharedAttribute(String)}.
+     * @return the names of the shared attributes
+     */
+    String[] sharedAttributes() default {};
+
+    /**
+     * Sets the maximum number of shared attribute values cached by the {@link ScaleoutSessionRepository}.
+     * @return the maximum number of cached shared values
+     */
+    int sharedValueCacheSize() default ScaleoutSessionRepository.DEF_SHARED_VALUE_CACHE_SIZE;
+
+    /**
+     * Sets whether the {@link ScaleoutSessionRepository} keeps sessions in an in-process
+     * {@link org.springframework.session.soss.EmbeddedSessionStore} instead of connecting to ScaleOut StateServer, for
+     * single-instance deployments and tests. Sessions are not shared with other instances and do not survive a
+     * restart. The remote store and asynchronous connection settings are ignored.
+     * @return whether or not to use the embedded store
+     */
+    boolean embeddedStore() default ScaleoutSessionRepository.DEF_EMBEDDED_STORE;
 }
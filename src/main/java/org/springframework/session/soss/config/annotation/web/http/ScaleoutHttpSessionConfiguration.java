@@ -15,6 +15,7 @@
 */
 package org.springframework.session.soss.config.annotation.web.http;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.ImportAware;
@@ -22,11 +23,15 @@ import org.springframework.core.annotation.AnnotationAttributes;
 import org.springframework.core.type.AnnotationMetadata;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.session.config.annotation.web.http.SpringHttpSessionConfiguration;
+import org.springframework.session.soss.EmbeddedSessionStore;
 import org.springframework.session.soss.ScaleoutSession;
 import org.springframework.session.soss.ScaleoutSessionRepository;
+import org.springframework.session.soss.SessionIndexExtractor;
+import org.springframework.session.soss.SizeBudgetPolicy;
 
 import java.time.Duration;
 import java.util.Map;
+import java.util.function.Predicate;
 
 /**
  * ScaleOutHttpSessionConfiguration is responsible for instantiating a ScaleOutSession repository with the proper
@@ -43,6 +48,23 @@ public class ScaleoutHttpSessionConfiguration extends SpringHttpSessionConfigura
     private int _maxInactiveTime        = ScaleoutSession.DEF_MAX_INACTIVE_TIME;
     private int _maxRemoteRetries       = ScaleoutSessionRepository.DEF_REMOTE_READPENDING_RETRIES;
     private int _remoteRetryInterval    = ScaleoutSessionRepository.DEF_REMOTE_READPENDING_RETRY_INTERVAL;
+    private boolean _deferUnqualified   = ScaleoutSessionRepository.DEF_DEFER_UNQUALIFIED_SESSIONS;
+    private int _unqualifiedTimeout     = ScaleoutSessionRepository.DEF_UNQUALIFIED_SESSION_TIMEOUT;
+    private String[] _indexedAttributes = new String[0];
+    private int _lockRetryInterval      = ScaleoutSessionRepository.DEF_LOCK_RETRY_INTERVAL;
+    private long _lockTimeout           = ScaleoutSessionRepository.DEF_LOCK_TIMEOUT;
+    private boolean _enableJmx          = ScaleoutSessionRepository.DEF_ENABLE_JMX;
+    private int _sizeSampleRate         = ScaleoutSessionRepository.DEF_SIZE_SAMPLE_RATE;
+    private int _maxAttributeBytes      = ScaleoutSessionRepository.DEF_MAX_ATTRIBUTE_BYTES;
+    private int _maxSessionBytes        = ScaleoutSessionRepository.DEF_MAX_SESSION_BYTES;
+    private SizeBudgetPolicy _sizeBudgetPolicy = ScaleoutSessionRepository.DEF_SIZE_BUDGET_POLICY;
+    private long _maxStaleness          = ScaleoutSessionRepository.DEF_MAX_STALENESS;
+    private boolean _asyncConnect       = ScaleoutSessionRepository.DEF_CONNECT_ASYNCHRONOUSLY;
+    private long _readyTimeout          = ScaleoutSessionRepository.DEF_READY_TIMEOUT;
+    private String[] _sharedAttributes  = new String[0];
+    private int _sharedValueCacheSize   = ScaleoutSessionRepository.DEF_SHARED_VALUE_CACHE_SIZE;
+    private boolean _embeddedStore      = ScaleoutSessionRepository.DEF_EMBEDDED_STORE;
+    private Predicate<ScaleoutSession> _persistencePredicate;
 
 
     /**
@@ -53,7 +75,42 @@ public class ScaleoutHttpSessionConfiguration extends SpringHttpSessionConfigura
     public ScaleoutSessionRepository sessionRepository() {
         Duration maxInactive = Duration.ofMinutes(_maxInactiveTime);
 
-        return new ScaleoutSessionRepository(_cacheName, maxInactive, _useLocking, _remoteStoreName, _remoteRetryInterval, _maxRemoteRetries);
+        ScaleoutSessionRepository repository = _embeddedStore
+                ? new ScaleoutSessionRepository(_cacheName, maxInactive, _useLocking, new EmbeddedSessionStore())
+                : new ScaleoutSessionRepository(_cacheName, maxInactive, _useLocking, _remoteStoreName, _remoteRetryInterval, _maxRemoteRetries, _asyncConnect);
+        repository.setReadyTimeout(Duration.ofMillis(_readyTimeout));
+        repository.setDeferUnqualifiedSessions(_deferUnqualified);
+        repository.setUnqualifiedSessionTimeout(Duration.ofMinutes(_unqualifiedTimeout));
+        repository.setSessionPersistencePredicate(_persistencePredicate);
+        for(String definition : _indexedAttributes) {
+            SessionIndexExtractor.Definition index = SessionIndexExtractor.parse(definition);
+            repository.addIndex(index.getIndexName(), index.getExtractor());
+        }
+        repository.setSharedValueCacheSize(_sharedValueCacheSize);
+        for(String sharedAttribute : _sharedAttributes) {
+            repository.addSharedAttribute(sharedAttribute);
+        }
+        repository.setLockRetryInterval(_lockRetryInterval);
+        repository.setLockTimeout(_lockTimeout);
+        repository.setSizeSampleRate(_sizeSampleRate);
+        repository.setMaxAttributeBytes(_maxAttributeBytes);
+        repository.setMaxSessionBytes(_maxSessionBytes);
+        repository.setSizeBudgetPolicy(_sizeBudgetPolicy);
+        repository.setMaxStaleness(Duration.ofMillis(_maxStaleness));
+        if(_enableJmx) {
+            repository.registerMBean();
+        }
+        return repository;
+    }
+
+    /**
+     * Sets an optional predicate that qualifies sessions for persistence in addition to sessions holding attributes
+     * or a principal.
+     * @param persistencePredicate the predicate to use
+     */
+    @Autowired(required = false)
+    public void setSessionPersistencePredicate(Predicate<ScaleoutSession> persistencePredicate) {
+        _persistencePredicate = persistencePredicate;
     }
 
     /**
@@ -70,5 +127,21 @@ public class ScaleoutHttpSessionConfiguration extends SpringHttpSessionConfigura
         _remoteStoreName        = attributes.getString("remoteStoreName");
         _remoteRetryInterval    = attributes.getNumber("remoteReadPendingRetryInterval");
         _maxRemoteRetries       = attributes.getNumber("maxRemoteReadRetries");
+        _deferUnqualified       = attributes.getBoolean("deferUnqualifiedSessions");
+        _unqualifiedTimeout     = attributes.getNumber("unqualifiedSessionTimeoutMinutes");
+        _indexedAttributes      = attributes.getStringArray("indexedAttributes");
+        _lockRetryInterval      = attributes.getNumber("lockRetryInterval");
+        _lockTimeout            = attributes.getNumber("lockTimeout");
+        _enableJmx              = attributes.getBoolean("enableJmx");
+        _sizeSampleRate         = attributes.getNumber("sizeSampleRate");
+        _maxAttributeBytes      = attributes.getNumber("maxAttributeBytes");
+        _maxSessionBytes        = attributes.getNumber("maxSessionBytes");
+        _sizeBudgetPolicy       = attributes.getEnum("sizeBudgetPolicy");
+        _maxStaleness           = attributes.getNumber("maxStalenessMillis");
+        _asyncConnect           = attributes.getBoolean("asyncConnect");
+        _readyTimeout           = attributes.getNumber("readyTimeoutMillis");
+        _sharedAttributes       = attributes.getStringArray("sharedAttributes");
+        _sharedValueCacheSize   = attributes.getNumber("sharedValueCacheSize");
+        _embeddedStore          = attributes.getBoolean("embeddedStore");
     }
 }
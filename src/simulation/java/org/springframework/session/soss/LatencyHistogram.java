@@ -0,0 +1,88 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Concurrent log-linear latency histogram used by the {@link LoadSimulator}. Values are recorded in nanoseconds into
+ * buckets of 1/64th of a power of two, so percentiles are accurate to within about 1.6%.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAGNITUDES = 64 - SUB_BUCKET_BITS;
+
+    private final AtomicLongArray _counts = new AtomicLongArray((MAGNITUDES + 1) * SUB_BUCKETS);
+    private final LongAccumulator _max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a latency.
+     * @param nanos the latency in nanoseconds
+     */
+    void record(long nanos) {
+        if(nanos < 0) nanos = 0;
+        _counts.incrementAndGet(bucket(nanos));
+        _max.accumulate(nanos);
+    }
+
+    long count() {
+        long count = 0;
+        for(int i = 0; i < _counts.length(); i++) {
+            count += _counts.get(i);
+        }
+        return count;
+    }
+
+    long maxNanos() {
+        return _max.get();
+    }
+
+    /**
+     * Retrieves the value at the parameter percentile, the upper bound of the bucket holding it.
+     * @param percentile the percentile, e.g. 99.9
+     * @return the latency in nanoseconds, 0 if nothing was recorded
+     */
+    long percentileNanos(double percentile) {
+        long count = count();
+        if(count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for(int i = 0; i < _counts.length(); i++) {
+            seen += _counts.get(i);
+            if(seen >= rank) {
+                return Math.min(upperBound(i), _max.get());
+            }
+        }
+        return _max.get();
+    }
+
+    // values below SUB_BUCKETS map linearly, larger values to the sub-bucket of their magnitude
+    private static int bucket(long value) {
+        if(value < SUB_BUCKETS) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> magnitude) - SUB_BUCKETS;
+        return (magnitude + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if(bucket < SUB_BUCKETS) return bucket;
+        int magnitude = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << magnitude) - 1;
+    }
+}
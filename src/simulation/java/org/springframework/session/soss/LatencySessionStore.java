@@ -0,0 +1,198 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link SessionStore} used by the {@link LoadSimulator}. Delegates to an {@link EmbeddedSessionStore}, which keeps
+ * the locking, caching and expiration semantics of ScaleOut StateServer, and charges every operation a simulated
+ * network round trip plus a per-kilobyte transfer cost. Transfers are sized by the serialized form of the last
+ * object written under a key, and reads served from the client cache only pay the round trip.
+ */
+class LatencySessionStore implements SessionStore {
+    private final EmbeddedSessionStore _store = new EmbeddedSessionStore();
+    // serialized size of every stored object and whether the client cache holds its current version
+    private final ConcurrentHashMap<String, Transfer> _transfers = new ConcurrentHashMap<>();
+    private final long _roundTripNanos;
+    private final long _nanosPerKilobyte;
+    private final LongAdder _lockConflicts = new LongAdder();
+    private final LongAdder _bytesTransferred = new LongAdder();
+
+    /**
+     * Instantiates the store.
+     * @param roundTripMicros simulated round trip of every operation in microseconds
+     * @param microsPerKilobyte simulated transfer cost in microseconds per kilobyte read or written
+     */
+    LatencySessionStore(long roundTripMicros, long microsPerKilobyte) {
+        _roundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros);
+        _nanosPerKilobyte = TimeUnit.MICROSECONDS.toNanos(microsPerKilobyte);
+    }
+
+    @Override
+    public Accessor accessor(String key) {
+        return new LatencyAccessor(key, _store.accessor(key));
+    }
+
+    @Override
+    public Set<String> queryKeys(String property, String value) throws SessionStoreException {
+        simulateTransfer(0);
+        return _store.queryKeys(property, value);
+    }
+
+    @Override
+    public void close() {
+        _store.close();
+    }
+
+    int size() {
+        return _store.size();
+    }
+
+    long lockConflicts() {
+        return _lockConflicts.sum();
+    }
+
+    long bytesTransferred() {
+        return _bytesTransferred.sum();
+    }
+
+    // helper method which blocks for the simulated cost of an operation transferring the parameter number of bytes
+    private void simulateTransfer(int bytes) {
+        _bytesTransferred.add(bytes);
+        long nanos = _roundTripNanos + _nanosPerKilobyte * bytes / 1024;
+        if(nanos > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+
+    private static int serializedSize(Object value) throws SessionStoreException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(value);
+        } catch (IOException e) {
+            throw new SessionStoreException(e);
+        }
+        return bytes.size();
+    }
+
+    /**
+     * The transfer size of a stored object.
+     */
+    private static final class Transfer {
+        private final int bytes;
+        private volatile boolean cached;
+
+        Transfer(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * An accessor charging the simulated cost of each operation before delegating.
+     */
+    private final class LatencyAccessor implements Accessor {
+        private final String _key;
+        private final Accessor _accessor;
+
+        LatencyAccessor(String key, Accessor accessor) {
+            _key = key;
+            _accessor = accessor;
+        }
+
+        @Override
+        public void setLockedWhenReading(boolean lockedWhenReading) {
+            _accessor.setLockedWhenReading(lockedWhenReading);
+        }
+
+        @Override
+        public Object read(Set<ReadOption> options) throws SessionStoreException {
+            Object value;
+            try {
+                value = _accessor.read(options);
+            } catch (SessionStoreException.Locked e) {
+                _lockConflicts.increment();
+                simulateTransfer(0);
+                throw e;
+            }
+            Transfer transfer = _transfers.get(_key);
+            if(value == null || transfer == null) {
+                if(value == null) {
+                    _transfers.remove(_key);
+                }
+                simulateTransfer(0);
+                return value;
+            }
+            if(options.contains(ReadOption.RETURN_CACHED_OBJECT_IF_VALID)) {
+                // the client cache holds the current version -- only the version check goes over the wire
+                boolean cached = transfer.cached;
+                transfer.cached = true;
+                simulateTransfer(cached ? 0 : transfer.bytes);
+            } else {
+                simulateTransfer(transfer.bytes);
+            }
+            return value;
+        }
+
+        @Override
+        public void create(Duration timeout, Object value) throws SessionStoreException {
+            int bytes = serializedSize(value);
+            simulateTransfer(bytes);
+            _accessor.create(timeout, value);
+            _transfers.put(_key, new Transfer(bytes));
+        }
+
+        @Override
+        public void update(Object value, boolean unlock) throws SessionStoreException {
+            int bytes = serializedSize(value);
+            simulateTransfer(bytes);
+            try {
+                _accessor.update(value, unlock);
+            } catch (SessionStoreException.Locked e) {
+                _lockConflicts.increment();
+                throw e;
+            }
+            _transfers.put(_key, new Transfer(bytes));
+        }
+
+        @Override
+        public void delete() throws SessionStoreException {
+            simulateTransfer(0);
+            try {
+                _accessor.delete();
+            } catch (SessionStoreException.Locked e) {
+                _lockConflicts.increment();
+                throw e;
+            }
+            _transfers.remove(_key);
+        }
+
+        @Override
+        public void releaseLock() throws SessionStoreException {
+            simulateTransfer(0);
+            _accessor.releaseLock();
+        }
+    }
+}
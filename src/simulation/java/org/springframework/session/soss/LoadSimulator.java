@@ -0,0 +1,297 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import org.springframework.session.FindByIndexNameSessionRepository;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Session traffic load simulator. Drives a {@link ScaleoutSessionRepository} backed by an
+ * {@link EmbeddedSessionStore} behind the simulated network of a {@link LatencySessionStore} with the traffic
+ * described by a {@link Scenario}: a population of users whose page views issue parallel requests for the same
+ * session, a mix of read-only and writing requests, logins that rotate the session id, logouts, log-normally
+ * distributed session sizes and session expiry. For every lock mode of the scenario it reports the throughput and the
+ * p50/p99/p999 latencies of each repository operation.
+ *
+ * <p>
+ *     Run with <code>gradle simulate -Pscenario=&lt;name or file&gt;</code>, optionally followed by
+ *     <code>-Poverrides=key=value,...</code>. The scenarios under <code>src/simulation/resources/scenarios</code>
+ *     document the available properties.
+ * </p>
+ */
+public class LoadSimulator {
+
+    /**
+     * Operations timed by the simulator. REQUEST is the end-to-end latency of a request.
+     */
+    enum Operation { CREATE, FIND, FIND_READ_ONLY, SAVE, LOGIN, DELETE, REQUEST }
+
+    private final Scenario _scenario;
+    private final Scenario.LockMode _lockMode;
+    private final LatencySessionStore _store;
+    private final ScaleoutSessionRepository _repository;
+    // current session id of every user, null if the user has no session
+    private final AtomicReferenceArray<String> _sessionIds;
+    private final Map<Operation, LatencyHistogram> _latencies = new EnumMap<>(Operation.class);
+    private final LongAdder _missingSessions = new LongAdder();
+    private final ExecutorService _requestExecutor;
+    private volatile boolean _recording;
+
+    private LoadSimulator(Scenario scenario, Scenario.LockMode lockMode) {
+        _scenario = scenario;
+        _lockMode = lockMode;
+        _store = new LatencySessionStore(scenario.storeRoundTripMicros, scenario.storeMicrosPerKilobyte);
+        _repository = new ScaleoutSessionRepository("simulation-" + lockMode.name().toLowerCase(),
+                Duration.ofSeconds(scenario.maxInactiveSeconds), lockMode == Scenario.LockMode.LOCKED,
+                ScaleoutSessionRepository.DEF_UNASSIGNED, ScaleoutSessionRepository.DEF_REMOTE_READPENDING_RETRY_INTERVAL,
+                ScaleoutSessionRepository.DEF_REMOTE_READPENDING_RETRIES, _store);
+        _repository.setLockRetryInterval(scenario.lockRetryInterval);
+        _repository.setLockTimeout(scenario.lockTimeout);
+        _repository.setSizeSampleRate(0);
+        _sessionIds = new AtomicReferenceArray<>(scenario.users);
+        for(Operation operation : Operation.values()) {
+            _latencies.put(operation, new LatencyHistogram());
+        }
+        // the page view's thread issues one request itself, the others go to the pool
+        int poolSize = scenario.threads * Math.max(1, scenario.parallelRequests - 1);
+        _requestExecutor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "simulation-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs a scenario.
+     * @param args the scenario name or file, followed by optional <code>key=value</code> overrides
+     * @throws Exception if the scenario couldn't be read or the simulation failed
+     */
+    public static void main(String[] args) throws Exception {
+        if(args.length == 0) {
+            System.err.println("usage: LoadSimulator <scenario name or file> [key=value ...]");
+            System.exit(2);
+        }
+        Scenario scenario = Scenario.load(args[0], Arrays.asList(args).subList(1, args.length));
+        for(Scenario.LockMode lockMode : scenario.lockModes) {
+            LoadSimulator simulator = new LoadSimulator(scenario, lockMode);
+            try {
+                simulator.run();
+                simulator.report(System.out);
+            } finally {
+                simulator.shutdown();
+            }
+        }
+    }
+
+    // runs the warm-up and the measured period
+    private void run() throws InterruptedException {
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(_scenario.warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(_scenario.durationSeconds);
+        List<Thread> drivers = new ArrayList<>();
+        for(int i = 0; i < _scenario.threads; i++) {
+            Thread driver = new Thread(() -> {
+                while(System.nanoTime() < end) {
+                    pageView();
+                }
+            }, "simulation-driver-" + i);
+            drivers.add(driver);
+            driver.start();
+        }
+        long remaining = warmupEnd - System.nanoTime();
+        if(remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+        _recording = true;
+        for(Thread driver : drivers) {
+            driver.join();
+        }
+        _recording = false;
+    }
+
+    private void shutdown() {
+        _requestExecutor.shutdownNow();
+        _repository.shutdown();
+    }
+
+    // a page view of a random user -- a login, a logout or a page load of parallel requests
+    private void pageView() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int user = random.nextInt(_scenario.users);
+        if(random.nextDouble() < _scenario.newUserRatio) {
+            // a visitor without a session cookie -- the old session, if any, is left to expire
+            _sessionIds.set(user, null);
+        }
+        String id = _sessionIds.get(user);
+        if(id == null) {
+            timed(Operation.REQUEST, () -> createSession(user));
+            return;
+        }
+        double action = random.nextDouble();
+        if(action < _scenario.logoutRatio) {
+            timed(Operation.REQUEST, () -> logout(user, id));
+        } else if(action < _scenario.logoutRatio + _scenario.loginRatio) {
+            timed(Operation.REQUEST, () -> login(user, id));
+        } else {
+            List<Future<Object>> requests = new ArrayList<>(_scenario.parallelRequests - 1);
+            for(int i = 1; i < _scenario.parallelRequests; i++) {
+                requests.add(_requestExecutor.submit((Callable<Object>) () -> timed(Operation.REQUEST, () -> request(user, id))));
+            }
+            timed(Operation.REQUEST, () -> request(user, id));
+            for(Future<Object> request : requests) {
+                try {
+                    request.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Simulated request failed.", e.getCause());
+                }
+            }
+        }
+    }
+
+    // a request as handled by the session repository filter -- find the session, use it and save it on commit
+    private Object request(int user, String id) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean readOnly = random.nextDouble() < _scenario.readOnlyRatio;
+        ScaleoutSession session = readOnly
+                ? timed(Operation.FIND_READ_ONLY, () -> _repository.findByIdReadOnly(id))
+                : find(id);
+        if(session == null) {
+            // expired, deleted, rotated by a concurrent login or the lock timed out -- the request starts a new session
+            if(_recording) {
+                _missingSessions.increment();
+            }
+            return createSession(user);
+        }
+        if(readOnly) return session;
+        if(random.nextDouble() < _scenario.writeRatio) {
+            int attribute = random.nextInt(_scenario.attributeCount);
+            session.setAttribute("attribute-" + attribute, new byte[attributeSize(random)]);
+        }
+        return timed(Operation.SAVE, () -> {
+            _repository.save(session);
+            return session;
+        });
+    }
+
+    // a locking read -- a lock timeout is counted like a missing session
+    private ScaleoutSession find(String id) {
+        return timed(Operation.FIND, () -> {
+            try {
+                return _repository.findById(id);
+            } catch (SessionLockTimeoutException e) {
+                return null;
+            }
+        });
+    }
+
+    private Object createSession(int user) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return timed(Operation.CREATE, () -> {
+            ScaleoutSession session = _repository.createSession();
+            for(int attribute = 0; attribute < _scenario.attributeCount; attribute++) {
+                session.setAttribute("attribute-" + attribute, new byte[attributeSize(random)]);
+            }
+            _repository.save(session);
+            _sessionIds.set(user, session.getId());
+            return session;
+        });
+    }
+
+    // a login rotates the session id and stores the principal
+    private Object login(int user, String id) {
+        ScaleoutSession session = find(id);
+        if(session == null) {
+            if(_recording) {
+                _missingSessions.increment();
+            }
+            return createSession(user);
+        }
+        return timed(Operation.LOGIN, () -> {
+            session.changeSessionId();
+            session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "user-" + user);
+            _repository.save(session);
+            _sessionIds.compareAndSet(user, id, session.getId());
+            return session;
+        });
+    }
+
+    private Object logout(int user, String id) {
+        return timed(Operation.DELETE, () -> {
+            _repository.deleteById(id);
+            _sessionIds.compareAndSet(user, id, null);
+            return id;
+        });
+    }
+
+    // the size of one attribute -- the log-normally distributed session size split over the attributes
+    private int attributeSize(ThreadLocalRandom random) {
+        double sessionBytes = _scenario.sessionSizeMedianBytes * Math.exp(_scenario.sessionSizeSigma * random.nextGaussian());
+        sessionBytes = Math.min(sessionBytes, _scenario.sessionSizeMaxBytes);
+        return Math.max(1, (int) (sessionBytes / _scenario.attributeCount));
+    }
+
+    private <T> T timed(Operation operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            if(_recording) {
+                _latencies.get(operation).record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private void report(PrintStream out) {
+        out.println();
+        out.printf("Scenario %s, %s: %d users, %d threads x %d parallel requests, %d s%n", _scenario.name,
+                _lockMode.name().toLowerCase(), _scenario.users, _scenario.threads, _scenario.parallelRequests,
+                _scenario.durationSeconds);
+        out.printf("%-16s %10s %10s %10s %10s %10s %10s%n", "operation", "count", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for(Operation operation : Operation.values()) {
+            LatencyHistogram histogram = _latencies.get(operation);
+            long count = histogram.count();
+            if(count == 0) continue;
+            out.printf("%-16s %10d %10.0f %10.3f %10.3f %10.3f %10.3f%n", operation.name().toLowerCase(), count,
+                    count / (double) _scenario.durationSeconds, millis(histogram.percentileNanos(50)),
+                    millis(histogram.percentileNanos(99)), millis(histogram.percentileNanos(99.9)), millis(histogram.maxNanos()));
+        }
+        out.printf("missing sessions %d, lock conflicts %d, stored sessions %d, transferred %.1f MB%n",
+                _missingSessions.sum(), _store.lockConflicts(), _store.size(), _store.bytesTransferred() / (1024.0 * 1024.0));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A load simulation scenario, read from a properties file. Scenarios are looked up by name under
+ * <code>scenarios/</code> on the classpath or by file path; every property has a default, so a scenario only lists
+ * what it changes. Properties can be overridden with <code>key=value</code> arguments.
+ */
+class Scenario {
+    /**
+     * Lock modes a scenario can run in.
+     */
+    enum LockMode { LOCKED, UNLOCKED }
+
+    final String name;
+    // user population -- the number of distinct users and the share of page views from users without a session
+    final int users;
+    final double newUserRatio;
+    // load -- concurrent page views and the requests each page view issues in parallel for the same session
+    final int threads;
+    final int parallelRequests;
+    final int warmupSeconds;
+    final int durationSeconds;
+    // request mix -- read-only requests, requests that write attributes, logins (id rotation) and logouts
+    final double readOnlyRatio;
+    final double writeRatio;
+    final double loginRatio;
+    final double logoutRatio;
+    // session size -- log-normally distributed total attribute bytes, split over a number of attributes
+    final int attributeCount;
+    final int sessionSizeMedianBytes;
+    final double sessionSizeSigma;
+    final int sessionSizeMaxBytes;
+    // expiry
+    final int maxInactiveSeconds;
+    // repository settings
+    final List<LockMode> lockModes;
+    final int lockRetryInterval;
+    final long lockTimeout;
+    // simulated store
+    final long storeRoundTripMicros;
+    final long storeMicrosPerKilobyte;
+
+    private Scenario(String name, Properties p) {
+        this.name = p.getProperty("name", name);
+        users = intValue(p, "users", 10000);
+        newUserRatio = doubleValue(p, "newUserRatio", 0.05);
+        threads = intValue(p, "threads", 16);
+        parallelRequests = intValue(p, "parallelRequests", 3);
+        warmupSeconds = intValue(p, "warmupSeconds", 5);
+        durationSeconds = intValue(p, "durationSeconds", 30);
+        readOnlyRatio = doubleValue(p, "readOnlyRatio", 0.5);
+        writeRatio = doubleValue(p, "writeRatio", 0.3);
+        loginRatio = doubleValue(p, "loginRatio", 0.01);
+        logoutRatio = doubleValue(p, "logoutRatio", 0.005);
+        attributeCount = intValue(p, "attributeCount", 4);
+        sessionSizeMedianBytes = intValue(p, "sessionSizeMedianBytes", 2048);
+        sessionSizeSigma = doubleValue(p, "sessionSizeSigma", 1.0);
+        sessionSizeMaxBytes = intValue(p, "sessionSizeMaxBytes", 262144);
+        maxInactiveSeconds = intValue(p, "maxInactiveSeconds", 1800);
+        lockRetryInterval = intValue(p, "lockRetryInterval", 1);
+        lockTimeout = longValue(p, "lockTimeout", 5000);
+        storeRoundTripMicros = longValue(p, "storeRoundTripMicros", 300);
+        storeMicrosPerKilobyte = longValue(p, "storeMicrosPerKilobyte", 10);
+        lockModes = new ArrayList<>();
+        for(String mode : p.getProperty("lockModes", "locked,unlocked").split(",")) {
+            lockModes.add(LockMode.valueOf(mode.trim().toUpperCase()));
+        }
+        if(users < 1 || threads < 1 || parallelRequests < 1 || attributeCount < 1 || durationSeconds < 1) {
+            throw new IllegalArgumentException("users, threads, parallelRequests, attributeCount and durationSeconds must be positive");
+        }
+    }
+
+    /**
+     * Loads a scenario.
+     * @param scenario the name of a scenario on the classpath, or the path of a scenario file
+     * @param overrides <code>key=value</code> overrides
+     * @return the scenario
+     * @throws IOException if the scenario couldn't be read
+     */
+    static Scenario load(String scenario, List<String> overrides) throws IOException {
+        Properties properties = new Properties();
+        String name = scenario;
+        if(Files.isRegularFile(Paths.get(scenario))) {
+            try (InputStream in = new FileInputStream(scenario)) {
+                properties.load(in);
+            }
+            name = Paths.get(scenario).getFileName().toString().replaceFirst("\\.properties$", "");
+        } else {
+            try (InputStream in = Scenario.class.getResourceAsStream("/scenarios/" + scenario + ".properties")) {
+                if(in == null) {
+                    throw new IOException("Scenario " + scenario + " not found.");
+                }
+                properties.load(in);
+            }
+        }
+        for(String override : overrides) {
+            int eq = override.indexOf('=');
+            if(eq < 1) {
+                throw new IllegalArgumentException("Override " + override + " is not of the form key=value.");
+            }
+            properties.setProperty(override.substring(0, eq).trim(), override.substring(eq + 1).trim());
+        }
+        return new Scenario(name, properties);
+    }
+
+    private static int intValue(Properties p, String key, int def) {
+        String value = p.getProperty(key);
+        return value != null ? Integer.parseInt(value.trim()) : def;
+    }
+
+    private static long longValue(Properties p, String key, long def) {
+        String value = p.getProperty(key);
+        return value != null ? Long.parseLong(value.trim()) : def;
+    }
+
+    private static double doubleValue(Properties p, String key, double def) {
+        String value = p.getProperty(key);
+        return value != null ? Double.parseDouble(value.trim()) : def;
+    }
+}
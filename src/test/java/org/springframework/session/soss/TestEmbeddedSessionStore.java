@@ -0,0 +1,144 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.soss.SessionStore.ReadOption;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+public class TestEmbeddedSessionStore {
+    private static final Set<ReadOption> LOCKED_READ = EnumSet.of(ReadOption.OBJECT_MAY_NOT_EXIST, ReadOption.RETURN_CACHED_OBJECT_IF_VALID, ReadOption.LOCK_OBJECT);
+    private static final Set<ReadOption> CACHED_READ = EnumSet.of(ReadOption.OBJECT_MAY_NOT_EXIST, ReadOption.RETURN_CACHED_OBJECT_IF_VALID);
+
+    private EmbeddedSessionStore _store;
+
+    @Before
+    public void setUp() {
+        _store = new EmbeddedSessionStore(4, Duration.ofMillis(10));
+    }
+
+    @After
+    public void tearDown() {
+        _store.close();
+    }
+
+    @Test
+    public void testCreateReadUpdate() throws Exception {
+        SessionStore.Accessor da = _store.accessor("a");
+        da.create(Duration.ofMinutes(1), "v1");
+        Object first = da.read(CACHED_READ);
+        Assert.assertEquals("v1", first);
+        Assert.assertSame(first, da.read(CACHED_READ));
+        da.update("v2", false);
+        Assert.assertEquals("v2", _store.accessor("a").read(CACHED_READ));
+        Assert.assertNull(_store.accessor("b").read(CACHED_READ));
+    }
+
+    @Test(expected = SessionStoreException.Exists.class)
+    public void testCreateExisting() throws Exception {
+        _store.accessor("a").create(Duration.ofMinutes(1), "v1");
+        _store.accessor("a").create(Duration.ofMinutes(1), "v2");
+    }
+
+    @Test
+    public void testLockHeldByAccessor() throws Exception {
+        SessionStore.Accessor owner = _store.accessor("a");
+        owner.setLockedWhenReading(true);
+        owner.create(Duration.ofMinutes(1), "v1");
+        owner.read(LOCKED_READ);
+
+        SessionStore.Accessor other = _store.accessor("a");
+        other.setLockedWhenReading(true);
+        try {
+            other.read(LOCKED_READ);
+            Assert.fail("read should fail while the object is locked");
+        } catch (SessionStoreException.Locked expected) {
+        }
+        try {
+            other.update("v2", true);
+            Assert.fail("update should fail while the object is locked");
+        } catch (SessionStoreException.Locked expected) {
+        }
+        // unlocked reads are not blocked by the lock
+        Assert.assertEquals("v1", _store.accessor("a").read(CACHED_READ));
+
+        owner.update("v2", true);
+        Assert.assertEquals("v2", other.read(LOCKED_READ));
+    }
+
+    @Test
+    public void testSlidingExpiration() throws Exception {
+        SessionStore.Accessor da = _store.accessor("a");
+        da.create(Duration.ofMillis(150), "v1");
+        for(int i = 0; i < 5; i++) {
+            Thread.sleep(50);
+            Assert.assertEquals("v1", da.read(CACHED_READ));
+        }
+        Thread.sleep(300);
+        Assert.assertEquals(0, _store.size());
+        Assert.assertNull(da.read(CACHED_READ));
+    }
+
+    @Test
+    public void testRepositoryIndexesAndBatches() throws Exception {
+        ScaleoutSessionRepository repository = new ScaleoutSessionRepository("test", Duration.ofMinutes(30), true, _store);
+        ScaleoutSession session = repository.createSession();
+        session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "alice");
+        repository.save(session);
+
+        Map<String, ScaleoutSession> found = repository.findByIndexNameAndIndexValue(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "alice");
+        Assert.assertEquals(1, found.size());
+        Assert.assertTrue(found.containsKey(session.getId()));
+
+        ScaleoutSession locked = repository.findById(session.getId());
+        Map<String, SessionBatchResult> results = repository.findAllById(Arrays.asList(session.getId(), "missing"));
+        Assert.assertEquals(SessionBatchResult.Status.LOCKED, results.get(session.getId()).getStatus());
+        Assert.assertEquals(SessionBatchResult.Status.MISSING, results.get("missing").getStatus());
+        repository.save(locked);
+        Assert.assertEquals(SessionBatchResult.Status.FOUND, repository.findAllById(Arrays.asList(session.getId())).get(session.getId()).getStatus());
+        repository.shutdown();
+    }
+
+    @Test
+    public void testExportImport() throws Exception {
+        ScaleoutSessionRepository source = new ScaleoutSessionRepository("source", Duration.ofMinutes(30), false, _store);
+        for(int i = 0; i < 20; i++) {
+            ScaleoutSession session = source.createSession();
+            session.setAttribute("n", i);
+            source.save(session);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(20, source.exportSessions(out));
+
+        EmbeddedSessionStore target = new EmbeddedSessionStore();
+        ScaleoutSessionRepository destination = new ScaleoutSessionRepository("target", Duration.ofMinutes(30), false, target);
+        Assert.assertEquals(20, destination.importSessions(new ByteArrayInputStream(out.toByteArray())));
+        Assert.assertEquals(20, destination.scanIds().count());
+        destination.shutdown();
+        source.shutdown();
+    }
+}
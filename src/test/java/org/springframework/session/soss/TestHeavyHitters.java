@@ -0,0 +1,93 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestHeavyHitters {
+
+    @Test
+    public void testTracksHeavyKeys() {
+        HeavyHitters sketch = new HeavyHitters(4, 1, Duration.ofMinutes(1), System::nanoTime);
+        for(int i = 0; i < 1000; i++) {
+            sketch.add("hot", 1);
+            sketch.add("cold-" + i, 1);
+        }
+        Map<String, Long> top = sketch.top(1);
+        Assert.assertTrue(top.containsKey("hot"));
+        Assert.assertTrue(top.get("hot") >= 1000);
+    }
+
+    @Test
+    public void testWeightedTopOrder() {
+        HeavyHitters sketch = new HeavyHitters(8, Duration.ofMinutes(1));
+        sketch.add("a", 5);
+        sketch.add("b", 50);
+        sketch.add("c", 20);
+        sketch.add("d", 0);
+        Map<String, Long> top = sketch.top(10);
+        Assert.assertEquals(3, top.size());
+        Assert.assertArrayEquals(new String[] { "b", "c", "a" }, top.keySet().toArray());
+    }
+
+    @Test
+    public void testClear() {
+        HeavyHitters sketch = new HeavyHitters(2, Duration.ofMinutes(1));
+        sketch.add("a", 1);
+        sketch.clear();
+        Assert.assertTrue(sketch.top(10).isEmpty());
+    }
+
+    @Test
+    public void testTopMergesStripes() {
+        HeavyHitters sketch = new HeavyHitters(64, 4, Duration.ofMinutes(1), System::nanoTime);
+        for(int i = 0; i < 20; i++) {
+            sketch.add("key-" + i, i + 1);
+        }
+        Map<String, Long> top = sketch.top(3);
+        Assert.assertArrayEquals(new Object[] { "key-19", "key-18", "key-17" }, top.keySet().toArray());
+        Assert.assertEquals(Long.valueOf(20), top.get("key-19"));
+    }
+
+    @Test
+    public void testOldWindowsDropped() {
+        AtomicLong clock = new AtomicLong();
+        long window = TimeUnit.MINUTES.toNanos(1);
+        HeavyHitters sketch = new HeavyHitters(64, 4, Duration.ofNanos(window), clock::get);
+        sketch.add("cooled", 10);
+
+        // the previous window is still counted
+        clock.set(window);
+        sketch.add("hot", 1);
+        Assert.assertEquals(Long.valueOf(10), sketch.top(10).get("cooled"));
+        Assert.assertEquals(window, sketch.coveredNanos());
+
+        clock.set(2 * window);
+        sketch.add("hot", 1);
+        Map<String, Long> top = sketch.top(10);
+        Assert.assertFalse(top.containsKey("cooled"));
+        Assert.assertEquals(Long.valueOf(2), top.get("hot"));
+
+        clock.set(5 * window);
+        Assert.assertTrue(sketch.top(10).isEmpty());
+    }
+}
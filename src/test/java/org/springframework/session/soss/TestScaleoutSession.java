@@ -0,0 +1,69 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+
+public class TestScaleoutSession {
+
+    @Test
+    public void testCopyDoesNotModifySnapshot() {
+        ScaleoutSession snapshot = new ScaleoutSession(Instant.now(), Duration.ofMinutes(5));
+        snapshot.setAttribute("a", "1");
+        ScaleoutSession copy = new ScaleoutSession(snapshot);
+        copy.setAttribute("a", "2");
+        copy.setAttribute("b", "3");
+        copy.removeAttribute("a");
+        Assert.assertEquals("1", snapshot.getAttribute("a"));
+        Assert.assertNull(snapshot.getAttribute("b"));
+        Assert.assertNull(copy.getAttribute("a"));
+        Assert.assertEquals("3", copy.getAttribute("b"));
+        Assert.assertEquals(snapshot.getId(), copy.getId());
+    }
+
+    @Test
+    public void testWriteAfterSnapshotDoesNotModifySnapshot() {
+        ScaleoutSession session = new ScaleoutSession(Instant.now(), Duration.ofMinutes(5));
+        session.setAttribute("a", "1");
+        ScaleoutSession snapshot = session.snapshot();
+        session.setAttribute("a", "2");
+        Assert.assertEquals("1", snapshot.getAttribute("a"));
+        Assert.assertEquals("2", session.getAttribute("a"));
+    }
+
+    @Test
+    public void testAttributeNamesAreACopy() {
+        ScaleoutSession snapshot = new ScaleoutSession(Instant.now(), Duration.ofMinutes(5));
+        snapshot.setAttribute("a", "1");
+        ScaleoutSession copy = new ScaleoutSession(snapshot);
+        Set<String> names = copy.getAttributeNames();
+        names.remove("a");
+        copy.setAttribute("b", "2");
+        Assert.assertEquals("1", snapshot.getAttribute("a"));
+        Assert.assertEquals("1", copy.getAttribute("a"));
+        Assert.assertTrue(names.isEmpty());
+
+        // the same for a session that does not share its attributes
+        Set<String> ownNames = copy.getAttributeNames();
+        ownNames.clear();
+        Assert.assertEquals(2, copy.getAttributeNames().size());
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.session.FindByIndexNameSessionRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class TestScaleoutSessionRegistry {
+    private ScaleoutSessionRepository _repository;
+    private ScaleoutSessionRegistry _registry;
+
+    @Before
+    public void setUp() {
+        _repository = new ScaleoutSessionRepository("test", Duration.ofMinutes(30), true, new EmbeddedSessionStore(4, Duration.ofMillis(10)));
+        _registry = new ScaleoutSessionRegistry(_repository, Duration.ZERO);
+    }
+
+    @After
+    public void tearDown() {
+        _registry.shutdown();
+        _repository.shutdown();
+    }
+
+    @Test
+    public void testRegisterAndExpire() {
+        String id = saveSession("alice");
+        _registry.registerNewSession(id, "alice");
+
+        List<SessionInformation> infos = _registry.getAllSessions("alice", false);
+        Assert.assertEquals(1, infos.size());
+        infos.get(0).expireNow();
+        Assert.assertTrue(_registry.getSessionInformation(id).isExpired());
+        Assert.assertTrue(_registry.getAllSessions("alice", false).isEmpty());
+    }
+
+    @Test
+    public void testGetAllPrincipals() {
+        saveSession("alice");
+        saveSession("alice");
+        saveSession("bob");
+        saveSession(null);
+
+        List<Object> principals = _registry.getAllPrincipals();
+        Assert.assertEquals(2, principals.size());
+        Assert.assertTrue(principals.containsAll(Arrays.asList("alice", "bob")));
+    }
+
+    @Test
+    public void testLastRequestRefreshedOnAccess() throws Exception {
+        String id = saveSession("alice");
+        _registry.registerNewSession(id, "alice");
+        long registered = _registry.getSessionInformation(id).getLastRequest().getTime();
+
+        Thread.sleep(20);
+        ScaleoutSession session = _repository.findById(id);
+        _repository.save(session);
+        Assert.assertTrue(_registry.getSessionInformation(id).getLastRequest().getTime() > registered);
+    }
+
+    @Test
+    public void testRefreshesWrittenInBackground() throws Exception {
+        ScaleoutSessionRepository repository = new ScaleoutSessionRepository("test", Duration.ofMinutes(30), true, new EmbeddedSessionStore(4, Duration.ofMillis(10)));
+        try {
+            ScaleoutSession session = repository.createSession();
+            session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "alice");
+            repository.save(session);
+            new ScaleoutSessionRegistry(repository, Duration.ofMinutes(10)).registerNewSession(session.getId(), "alice");
+
+            // a client that hasn't refreshed the session yet queues the refresh instead of writing it
+            ScaleoutSessionRegistry other = new ScaleoutSessionRegistry(repository, Duration.ofMinutes(10));
+            long registered = other.getSessionInformation(session.getId()).getLastRequest().getTime();
+            Thread.sleep(20);
+            other.refreshLastRequest(session.getId());
+            Assert.assertEquals(registered, other.getSessionInformation(session.getId()).getLastRequest().getTime());
+            other.shutdown();
+            Assert.assertTrue(other.getSessionInformation(session.getId()).getLastRequest().getTime() > registered);
+        } finally {
+            repository.shutdown();
+        }
+    }
+
+    @Test
+    public void testSessionInformationWithoutReadingSession() {
+        TestScaleoutSessionRepository.RecordingStore store = new TestScaleoutSessionRepository.RecordingStore(new EmbeddedSessionStore(4, Duration.ofMillis(10)));
+        ScaleoutSessionRepository repository = new ScaleoutSessionRepository("test", Duration.ofMinutes(30), true, store);
+        try {
+            ScaleoutSession session = repository.createSession();
+            session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "alice");
+            repository.save(session);
+            new ScaleoutSessionRegistry(repository, Duration.ZERO).registerNewSession(session.getId(), "alice");
+
+            // another client that hasn't seen the session
+            ScaleoutSessionRegistry other = new ScaleoutSessionRegistry(repository, Duration.ZERO);
+            store.events.clear();
+            Assert.assertNotNull(other.getSessionInformation(session.getId()));
+            Assert.assertFalse(store.events.contains("read " + session.getId() + " " + Thread.currentThread().getName()));
+            Assert.assertNull(other.getSessionInformation("unregistered"));
+        } finally {
+            repository.shutdown();
+        }
+    }
+
+    @Test
+    public void testSeveralListeners() {
+        List<String> deleted = new CopyOnWriteArrayList<>();
+        _repository.addSessionListener(new SessionLifecycleListener() {
+            @Override
+            public void sessionAccessed(ScaleoutSession session) {
+            }
+
+            @Override
+            public void sessionIdChanged(List<String> oldIds, ScaleoutSession session) {
+            }
+
+            @Override
+            public void sessionDeleted(String sessionId) {
+                deleted.add(sessionId);
+            }
+        });
+        String id = saveSession("alice");
+        _registry.registerNewSession(id, "alice");
+        _repository.deleteById(id);
+
+        Assert.assertEquals(1, deleted.size());
+        Assert.assertNull(_registry.getSessionInformation(id));
+    }
+
+    @Test
+    public void testSessionInformationSerializable() throws Exception {
+        String id = saveSession("alice");
+        _registry.registerNewSession(id, "alice");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(_registry.getSessionInformation(id));
+        }
+        SessionInformation copy;
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (SessionInformation) in.readObject();
+        }
+        Assert.assertEquals(id, copy.getSessionId());
+        // a deserialized copy only expires locally
+        copy.expireNow();
+        Assert.assertTrue(copy.isExpired());
+        Assert.assertFalse(_registry.getSessionInformation(id).isExpired());
+    }
+
+    // private helper method to save a session for a principal
+    private String saveSession(String principal) {
+        ScaleoutSession session = _repository.createSession();
+        if(principal != null) {
+            session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, principal);
+        }
+        _repository.save(session);
+        return session.getId();
+    }
+}
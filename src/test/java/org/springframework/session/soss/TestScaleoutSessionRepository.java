@@ -0,0 +1,620 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import com.scaleoutsoftware.soss.client.query.EqualFilter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.soss.SessionStore.ReadOption;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+public class TestScaleoutSessionRepository {
+    private static final Set<ReadOption> LOCKED_READ = EnumSet.of(ReadOption.OBJECT_MAY_NOT_EXIST, ReadOption.LOCK_OBJECT);
+
+    private EmbeddedSessionStore _embedded;
+    private RecordingStore _store;
+    private ScaleoutSessionRepository _repository;
+
+    @Before
+    public void setUp() {
+        _embedded = new EmbeddedSessionStore(4, Duration.ofMillis(10));
+        _store = new RecordingStore(_embedded);
+        _repository = new ScaleoutSessionRepository("test", Duration.ofMinutes(30), true, _store);
+    }
+
+    @After
+    public void tearDown() {
+        _repository.shutdown();
+    }
+
+    @Test
+    public void testOldIdLockReleasedOnSave() throws Exception {
+        ScaleoutSession session = _repository.createSession();
+        session.setAttribute("a", "1");
+        _repository.save(session);
+
+        ScaleoutSession locked = _repository.findById(session.getId());
+        String oldId = locked.getId();
+        locked.changeSessionId();
+        _store.events.clear();
+        _repository.save(locked);
+
+        // the lock on the old id is released by the saving thread, the delete is left to the background remover
+        Assert.assertTrue(_store.events.contains("releaseLock " + oldId + " " + Thread.currentThread().getName()));
+        SessionStore.Accessor other = _embedded.accessor(oldId);
+        other.setLockedWhenReading(true);
+        other.read(LOCKED_READ);
+        other.releaseLock();
+        long deadline = System.currentTimeMillis() + 5000;
+        while(_embedded.accessor(oldId).read(EnumSet.of(ReadOption.OBJECT_MAY_NOT_EXIST)) != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertNull(_embedded.accessor(oldId).read(EnumSet.of(ReadOption.OBJECT_MAY_NOT_EXIST)));
+        Assert.assertEquals("1", _repository.findByIdReadOnly(locked.getId()).getAttribute("a"));
+    }
+
+    @Test
+    public void testPromoteShortLivedSession() throws Exception {
+        _repository.setUnqualifiedSessionTimeout(Duration.ofMillis(300));
+        ScaleoutSession promoted = _repository.createSession();
+        _repository.save(promoted);
+        ScaleoutSession unqualified = _repository.createSession();
+        _repository.save(unqualified);
+
+        ScaleoutSession session = _repository.findById(promoted.getId());
+        session.setAttribute("a", "1");
+        _repository.save(session);
+
+        Thread.sleep(600);
+        Assert.assertNull(_repository.findByIdReadOnly(unqualified.getId()));
+        Assert.assertEquals("1", _repository.findByIdReadOnly(promoted.getId()).getAttribute("a"));
+    }
+
+    @Test
+    public void testSessionFoundWhilePromoted() throws Exception {
+        _repository.setUnqualifiedSessionTimeout(Duration.ofMillis(300));
+        ScaleoutSession created = _repository.createSession();
+        _repository.save(created);
+        String id = created.getId();
+
+        // read the session from another request in the gap between the delete and the create of the promotion
+        List<ScaleoutSession> concurrent = new CopyOnWriteArrayList<>();
+        _store.afterDelete = key -> {
+            if(key.equals(id)) {
+                concurrent.add(_repository.findByIdReadOnly(id));
+            }
+        };
+        ScaleoutSession session = _repository.findById(id);
+        session.setAttribute("a", "1");
+        _repository.save(session);
+        _store.afterDelete = null;
+
+        Assert.assertEquals(1, concurrent.size());
+        Assert.assertNotNull(concurrent.get(0));
+        Assert.assertEquals("1", concurrent.get(0).getAttribute("a"));
+        Thread.sleep(600);
+        Assert.assertEquals("1", _repository.findByIdReadOnly(id).getAttribute("a"));
+    }
+
+    @Test
+    public void testMissSkipsPromotionCopyWithoutShortLivedSessions() {
+        _store.events.clear();
+        Assert.assertNull(_repository.findById("missing"));
+        Assert.assertEquals(1, _store.events.size());
+
+        _repository.setUnqualifiedSessionTimeout(Duration.ofMillis(300));
+        _store.events.clear();
+        Assert.assertNull(_repository.findById("missing"));
+        Assert.assertEquals(2, _store.events.size());
+    }
+
+    @Test
+    public void testDeleteRemovesLeftoverPromotionCopy() throws Exception {
+        _repository.setUnqualifiedSessionTimeout(Duration.ofMinutes(5));
+        ScaleoutSession created = _repository.createSession();
+        _repository.save(created);
+        String id = created.getId();
+
+        // keep the promotion copy, as if the promoting request had failed to delete it
+        Map<String, Object> copies = new ConcurrentHashMap<>();
+        _store.afterDelete = key -> {
+            if(!key.equals(id)) return;
+            for(String event : _store.events) {
+                String[] parts = event.split(" ");
+                if(parts[0].equals("create") && !parts[1].equals(id)) {
+                    try {
+                        copies.put(parts[1], _embedded.accessor(parts[1]).read(EnumSet.of(ReadOption.OBJECT_MAY_NOT_EXIST)));
+                    } catch (SessionStoreException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        };
+        ScaleoutSession session = _repository.findById(id);
+        session.setAttribute("a", "1");
+        _store.events.clear();
+        _repository.save(session);
+        _store.afterDelete = null;
+        Assert.assertEquals(1, copies.size());
+        for(Map.Entry<String, Object> copy : copies.entrySet()) {
+            _embedded.accessor(copy.getKey()).create(Duration.ofMinutes(1), copy.getValue());
+        }
+
+        _repository.deleteById(id);
+        Assert.assertNull(_repository.findById(id));
+    }
+
+    @Test
+    public void testDeleteByPrincipalName() {
+        int count = 5 * ScaleoutSessionRepository.DEF_BULK_PARALLELISM;
+        for(int i = 0; i < count; i++) {
+            ScaleoutSession session = _repository.createSession();
+            session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "alice");
+            _repository.save(session);
+        }
+        ScaleoutSession other = _repository.createSession();
+        other.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "bob");
+        _repository.save(other);
+        long deletes = _repository.statistics().counts().get("DELETE");
+
+        Assert.assertEquals(count, _repository.deleteByPrincipalName("alice"));
+        Assert.assertTrue(_repository.findByIndexNameAndIndexValue(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "alice").isEmpty());
+        Assert.assertEquals(1, _repository.findByIndexNameAndIndexValue(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "bob").size());
+        Assert.assertEquals(deletes + count, (long) _repository.statistics().counts().get("DELETE"));
+    }
+
+    @Test
+    public void testSaveOfSessionDeletedWhileLockedFails() {
+        ScaleoutSession session = _repository.createSession();
+        session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "alice");
+        _repository.save(session);
+
+        ScaleoutSession locked = _repository.findById(session.getId());
+        Assert.assertEquals(1, _repository.deleteByPrincipalName("alice"));
+        locked.setAttribute("a", "1");
+        try {
+            _repository.save(locked);
+            Assert.fail("saved a deleted session");
+        } catch (SessionDeletedException e) {
+            // expected
+        }
+        Assert.assertNull(_repository.findById(session.getId()));
+    }
+
+    @Test
+    public void testDeleteAllWithUnsupportedFilter() {
+        ScaleoutSession session = _repository.createSession();
+        session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "alice");
+        _repository.save(session);
+
+        Assert.assertEquals(0, _repository.deleteAll(new EqualFilter("principalNameIndexName", "alice")));
+        Assert.assertNotNull(_repository.findById(session.getId()));
+    }
+
+    @Test
+    public void testFailingIndexExtractor() {
+        _repository.addIndex("failing", session -> {
+            throw new IllegalStateException("extractor failure");
+        });
+        _repository.addIndex("tenant", SessionIndexExtractor.forAttribute("tenant"));
+        ScaleoutSession session = _repository.createSession();
+        session.setAttribute("tenant", "t1");
+        _repository.save(session);
+
+        ScaleoutSession found = _repository.findById(session.getId());
+        found.setAttribute("a", "1");
+        _repository.save(found);
+
+        Assert.assertEquals("1", _repository.findByIdReadOnly(session.getId()).getAttribute("a"));
+        Assert.assertEquals(1, _repository.findByIndexNameAndIndexValue("tenant", "t1").size());
+    }
+
+    @Test
+    public void testPinnedIndexSlot() {
+        _repository.addIndex("tenant", 3, SessionIndexExtractor.forAttribute("tenant"));
+        _repository.addIndex("region", SessionIndexExtractor.forAttribute("region"));
+        ScaleoutSession session = _repository.createSession();
+        session.setAttribute("tenant", "t1");
+        session.setAttribute("region", "eu");
+        _repository.save(session);
+
+        ScaleoutSession found = _repository.findByIdReadOnly(session.getId());
+        Assert.assertEquals("eu", found.secondaryIndex1());
+        Assert.assertEquals("t1", found.secondaryIndex3());
+        Assert.assertEquals(1, _repository.findByIndexNameAndIndexValue("tenant", "t1").size());
+        try {
+            _repository.addIndex("tenant", SessionIndexExtractor.forAttribute("tenant"));
+            Assert.fail("added an index twice");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            _repository.addIndex("other", 3, SessionIndexExtractor.forAttribute("other"));
+            Assert.fail("reused a slot");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLockTimeoutThrows() throws Exception {
+        ScaleoutSession session = _repository.createSession();
+        _repository.save(session);
+        SessionStore.Accessor other = _embedded.accessor(session.getId());
+        other.setLockedWhenReading(true);
+        other.read(LOCKED_READ);
+        _repository.setLockRetryInterval(5);
+        _repository.setLockTimeout(50);
+
+        try {
+            _repository.findById(session.getId());
+            Assert.fail("Expected a lock timeout.");
+        } catch (SessionLockTimeoutException expected) {
+            // the session exists but stayed locked
+        }
+        other.releaseLock();
+        Assert.assertNotNull(_repository.findById(session.getId()));
+    }
+
+    @Test
+    public void testSaveLockTimeoutThrows() throws Exception {
+        ScaleoutSession created = _repository.createSession();
+        _repository.save(created);
+        ScaleoutSession session = _repository.findById(created.getId());
+        // the lock is released and taken by another client while the request runs
+        Assert.assertTrue(_repository.forceReleaseLock(session.getId()));
+        SessionStore.Accessor other = _embedded.accessor(session.getId());
+        other.setLockedWhenReading(true);
+        other.read(LOCKED_READ);
+        _repository.setLockRetryInterval(5);
+        _repository.setLockTimeout(50);
+
+        session.setAttribute("a", "1");
+        try {
+            _repository.save(session);
+            Assert.fail("Expected a lock timeout.");
+        } catch (SessionLockTimeoutException expected) {
+            // the changes of the request are not saved
+        }
+        other.releaseLock();
+        Assert.assertNull(_repository.findByIdReadOnly(session.getId()).getAttribute("a"));
+    }
+
+    @Test
+    public void testLockedSessionsRedacted() {
+        ScaleoutSession session = _repository.createSession();
+        _repository.save(session);
+        Assert.assertNotNull(_repository.findById(session.getId()));
+
+        Map<String, Long> locked = _repository.lockedSessions();
+        Assert.assertEquals(Collections.singleton(SessionProfiler.redact(session.getId())), locked.keySet());
+        Assert.assertTrue(_repository.forceReleaseRedactedLock(SessionProfiler.redact(session.getId())));
+        Assert.assertEquals(0, _repository.lockedSessionCount());
+    }
+
+    @Test
+    public void testForceReleaseLocks() {
+        ScaleoutSession session = _repository.createSession();
+        _repository.save(session);
+        Assert.assertNotNull(_repository.findById(session.getId()));
+
+        Assert.assertEquals(1, _repository.forceReleaseLocks(-1));
+        Assert.assertEquals(0, _repository.lockedSessionCount());
+        Assert.assertFalse(_repository.forceReleaseLock(session.getId()));
+        Assert.assertNotNull(_repository.findById(session.getId()));
+    }
+
+    @Test
+    public void testSizeBudgetWarn() {
+        _repository.setMaxAttributeBytes(1024);
+        ScaleoutSession session = _repository.createSession();
+        session.setAttribute("large", new byte[4096]);
+        _repository.save(session);
+
+        Assert.assertNotNull(_repository.findByIdReadOnly(session.getId()).getAttribute("large"));
+    }
+
+    @Test
+    public void testSizeBudgetRejectReleasesOriginalLock() {
+        ScaleoutSession created = _repository.createSession();
+        _repository.save(created);
+        _repository.setMaxAttributeBytes(1024);
+        _repository.setSizeBudgetPolicy(SizeBudgetPolicy.REJECT);
+
+        ScaleoutSession session = _repository.findById(created.getId());
+        session.changeSessionId();
+        session.setAttribute("large", new byte[4096]);
+        try {
+            _repository.save(session);
+            Assert.fail("Expected the session to be rejected.");
+        } catch (SessionSizeExceededException expected) {
+            // not saved
+        }
+        Assert.assertEquals(0, _repository.lockedSessionCount());
+        Assert.assertNull(_repository.findByIdReadOnly(session.getId()));
+        Assert.assertNotNull(_repository.findById(created.getId()));
+    }
+
+    @Test
+    public void testSizeBudgetRejectStoresNoSharedValues() {
+        _repository.addSharedAttribute("catalog");
+        _repository.setMaxSessionBytes(1024);
+        _repository.setSizeBudgetPolicy(SizeBudgetPolicy.REJECT);
+        ScaleoutSession session = _repository.createSession();
+        session.setAttribute("catalog", "shared catalog");
+        session.setAttribute("large", new byte[4096]);
+        try {
+            _repository.save(session);
+            Assert.fail("Expected the session to be rejected.");
+        } catch (SessionSizeExceededException expected) {
+            // not saved
+        }
+        Assert.assertEquals(0, _embedded.size());
+    }
+
+    @Test
+    public void testMeasuredSizesIndependentOfOrder() {
+        ScaleoutSession session = _repository.createSession();
+        session.setAttribute("first", new ArrayList<>(Arrays.asList("a", "b")));
+        session.setAttribute("second", new ArrayList<>(Arrays.asList("c", "d")));
+
+        Map<String, Long> sizes = SessionSizeAnalyzer.measure(session);
+        Assert.assertEquals(sizes.get("first"), sizes.get("second"));
+    }
+
+    @Test
+    public void testSizeBudgetDrop() {
+        _repository.setMaxSessionBytes(3000);
+        _repository.setSizeBudgetPolicy(SizeBudgetPolicy.DROP);
+        ScaleoutSession session = _repository.createSession();
+        session.setAttribute("small", "value");
+        session.setAttribute("medium", new byte[2048]);
+        session.setAttribute("large", new byte[4096]);
+        _repository.save(session);
+
+        ScaleoutSession stored = _repository.findByIdReadOnly(session.getId());
+        Assert.assertNull(stored.getAttribute("large"));
+        Assert.assertNotNull(stored.getAttribute("medium"));
+        Assert.assertEquals("value", stored.getAttribute("small"));
+    }
+
+    @Test
+    public void testReplicaReadsOnlyForReadOnlyRequests() throws Exception {
+        ScaleoutSessionRepository repository = new ScaleoutSessionRepository("geo", Duration.ofMinutes(30), false, "remote",
+                ScaleoutSessionRepository.DEF_REMOTE_READPENDING_RETRY_INTERVAL, ScaleoutSessionRepository.DEF_REMOTE_READPENDING_RETRIES,
+                new EmbeddedSessionStore(4, Duration.ofMillis(10)));
+        try {
+            repository.setMaxStaleness(Duration.ofMinutes(1));
+            ScaleoutSession session = repository.createSession();
+            repository.save(session);
+
+            Assert.assertNotNull(repository.findByIdReadOnly(session.getId()));
+            Assert.assertEquals(1, repository.localReplicaReads());
+            Assert.assertEquals(0, repository.remoteReads());
+
+            // a read that may be saved reads the remote object even with locking disabled
+            Assert.assertNotNull(repository.findById(session.getId()));
+            Assert.assertEquals(1, repository.localReplicaReads());
+            Assert.assertEquals(1, repository.remoteReads());
+
+            repository.setMaxStaleness(Duration.ofMillis(1));
+            Thread.sleep(10);
+            Assert.assertNotNull(repository.findByIdReadOnly(session.getId()));
+            Assert.assertEquals(1, repository.staleReplicaReads());
+            Assert.assertEquals(2, repository.remoteReads());
+        } finally {
+            repository.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeserializedOldReplicaIsStale() throws Exception {
+        ScaleoutSessionRepository writer = new ScaleoutSessionRepository("geo", Duration.ofMinutes(30), false, "remote",
+                ScaleoutSessionRepository.DEF_REMOTE_READPENDING_RETRY_INTERVAL, ScaleoutSessionRepository.DEF_REMOTE_READPENDING_RETRIES, _store);
+        ScaleoutSession session = writer.createSession();
+        writer.save(session);
+        Thread.sleep(100);
+
+        // the replica arrives at another client, which deserializes it for the first time
+        EmbeddedSessionStore replica = new EmbeddedSessionStore(4, Duration.ofMillis(10));
+        replica.accessor(session.getId()).create(Duration.ofMinutes(30), _embedded.accessor(session.getId()).read(EnumSet.of(ReadOption.OBJECT_MAY_NOT_EXIST)));
+        writer.shutdown();
+        ScaleoutSessionRepository reader = new ScaleoutSessionRepository("geo", Duration.ofMinutes(30), false, "remote",
+                ScaleoutSessionRepository.DEF_REMOTE_READPENDING_RETRY_INTERVAL, ScaleoutSessionRepository.DEF_REMOTE_READPENDING_RETRIES, replica);
+        try {
+            reader.setClockSkewAllowance(Duration.ZERO);
+            reader.setMaxStaleness(Duration.ofMillis(50));
+            Assert.assertNotNull(reader.findByIdReadOnly(session.getId()));
+            Assert.assertEquals(1, reader.staleReplicaReads());
+            Assert.assertEquals(0, reader.localReplicaReads());
+
+            reader.setMaxStaleness(Duration.ofMinutes(1));
+            Assert.assertNotNull(reader.findByIdReadOnly(session.getId()));
+            Assert.assertEquals(1, reader.localReplicaReads());
+        } finally {
+            reader.shutdown();
+        }
+    }
+
+    @Test
+    public void testImportKeepsRemainingTimeToLive() throws Exception {
+        ScaleoutSession session = _repository.createSession();
+        session.setMaxInactiveInterval(Duration.ofSeconds(1));
+        session.setAttribute("a", "1");
+        _repository.save(session);
+        ScaleoutSession promoted = _repository.createSession();
+        promoted.setMaxInactiveInterval(Duration.ofSeconds(1));
+        _repository.save(promoted);
+
+        EmbeddedSessionStore target = new EmbeddedSessionStore(4, Duration.ofMillis(10));
+        ScaleoutSessionRepository imported = new ScaleoutSessionRepository("target", Duration.ofMinutes(30), true, target);
+        try {
+            Assert.assertEquals(2, migrate(_repository, imported));
+
+            // the next save moves a session to the full timeout
+            ScaleoutSession found = imported.findById(promoted.getId());
+            found.setMaxInactiveInterval(Duration.ofMinutes(30));
+            imported.save(found);
+            Thread.sleep(1500);
+            Assert.assertNull(target.accessor(session.getId()).read(EnumSet.of(ReadOption.OBJECT_MAY_NOT_EXIST)));
+            Assert.assertNotNull(imported.findByIdReadOnly(promoted.getId()));
+        } finally {
+            imported.shutdown();
+        }
+    }
+
+    @Test
+    public void testImportShortLivedSession() throws Exception {
+        _repository.setUnqualifiedSessionTimeout(Duration.ofMinutes(1));
+        ScaleoutSession session = _repository.createSession();
+        _repository.save(session);
+
+        EmbeddedSessionStore target = new EmbeddedSessionStore(4, Duration.ofMillis(10));
+        ScaleoutSessionRepository imported = new ScaleoutSessionRepository("target", Duration.ofMinutes(30), true, target);
+        try {
+            imported.setUnqualifiedSessionTimeout(Duration.ofMillis(300));
+            Assert.assertEquals(1, migrate(_repository, imported));
+            Thread.sleep(600);
+            Assert.assertNull(target.accessor(session.getId()).read(EnumSet.of(ReadOption.OBJECT_MAY_NOT_EXIST)));
+        } finally {
+            imported.shutdown();
+        }
+    }
+
+    // private helper method to export the sessions of a repository and import them into another
+    private static long migrate(ScaleoutSessionRepository from, ScaleoutSessionRepository to) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        from.exportSessions(out);
+        return to.importSessions(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testBatchOfNulls() {
+        Assert.assertTrue(_repository.findAllById(Arrays.asList(null, null)).isEmpty());
+        Assert.assertTrue(_repository.saveAll(Collections.singletonList(null)).isEmpty());
+    }
+
+    @Test
+    public void testInterruptedBatchReportsLockedSessions() {
+        List<String> ids = new ArrayList<>();
+        for(int i = 0; i < 200; i++) {
+            ScaleoutSession session = _repository.createSession();
+            _repository.save(session);
+            ids.add(session.getId());
+        }
+
+        Thread.currentThread().interrupt();
+        Map<String, SessionBatchResult> results = _repository.findAllById(ids);
+        Assert.assertTrue(Thread.interrupted());
+
+        Assert.assertEquals(ids.size(), results.size());
+        List<ScaleoutSession> found = new ArrayList<>();
+        for(SessionBatchResult result : results.values()) {
+            if(result.getStatus() == SessionBatchResult.Status.FOUND) {
+                found.add(result.getSession());
+            } else {
+                Assert.assertEquals(SessionBatchResult.Status.SKIPPED, result.getStatus());
+            }
+        }
+        // every lock taken by the batch is reported, so saving the found sessions releases all of them
+        Assert.assertEquals(found.size(), _repository.lockedSessionCount());
+        _repository.saveAll(found);
+        Assert.assertEquals(0, _repository.lockedSessionCount());
+    }
+
+    /**
+     * Store that records the lock releases and deletes made through it, with the calling thread.
+     */
+    static final class RecordingStore implements SessionStore {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        volatile Consumer<String> afterDelete;
+        private final SessionStore _store;
+
+        RecordingStore(SessionStore store) {
+            _store = store;
+        }
+
+        @Override
+        public Accessor accessor(String key) throws SessionStoreException {
+            Accessor da = _store.accessor(key);
+            return new Accessor() {
+                @Override
+                public void setLockedWhenReading(boolean lockedWhenReading) {
+                    da.setLockedWhenReading(lockedWhenReading);
+                }
+
+                @Override
+                public Object read(Set<ReadOption> options) throws SessionStoreException {
+                    events.add("read " + key + " " + Thread.currentThread().getName());
+                    return da.read(options);
+                }
+
+                @Override
+                public void create(Duration timeout, Object value) throws SessionStoreException {
+                    events.add("create " + key + " " + Thread.currentThread().getName());
+                    da.create(timeout, value);
+                }
+
+                @Override
+                public void update(Object value, boolean unlock) throws SessionStoreException {
+                    da.update(value, unlock);
+                }
+
+                @Override
+                public void delete() throws SessionStoreException {
+                    events.add("delete " + key + " " + Thread.currentThread().getName());
+                    da.delete();
+                    Consumer<String> hook = afterDelete;
+                    if(hook != null) {
+                        hook.accept(key);
+                    }
+                }
+
+                @Override
+                public void releaseLock() throws SessionStoreException {
+                    events.add("releaseLock " + key + " " + Thread.currentThread().getName());
+                    da.releaseLock();
+                }
+            };
+        }
+
+        @Override
+        public Set<String> queryKeys(String property, String value) throws SessionStoreException {
+            return _store.queryKeys(property, value);
+        }
+
+        @Override
+        public void close() {
+            _store.close();
+        }
+    }
+}
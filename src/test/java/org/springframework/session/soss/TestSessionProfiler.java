@@ -0,0 +1,47 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class TestSessionProfiler {
+
+    @Test
+    public void testRecordContention() {
+        SessionProfiler profiler = new SessionProfiler();
+        profiler.recordContention("session-1", TimeUnit.MILLISECONDS.toNanos(40), 3);
+        profiler.recordContention("session-2", 0, 0);
+        Map<String, Long> retries = profiler.topLockRetries();
+        Assert.assertEquals(1, retries.size());
+        Assert.assertEquals(Long.valueOf(3), retries.get(SessionProfiler.redact("session-1")));
+        Assert.assertEquals(Long.valueOf(40), profiler.topLockWaitMillis().get(SessionProfiler.redact("session-1")));
+    }
+
+    @Test
+    public void testRecordAccessWithContention() {
+        SessionProfiler profiler = new SessionProfiler();
+        profiler.recordAccess("session-1", TimeUnit.MILLISECONDS.toNanos(5), 2);
+        profiler.recordAccess("session-1", 0, 0);
+        String key = SessionProfiler.redact("session-1");
+        Assert.assertTrue(profiler.topAccessRates().containsKey(key));
+        Assert.assertEquals(Long.valueOf(2), profiler.topLockRetries().get(key));
+        Assert.assertFalse(profiler.topLockRetries().containsKey(SessionProfiler.redact(key)));
+    }
+}
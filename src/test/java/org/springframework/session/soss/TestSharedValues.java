@@ -0,0 +1,184 @@
+/*
+ Copyright (c) 2018 by ScaleOut Software, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package org.springframework.session.soss;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.session.soss.SessionStore.ReadOption;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+public class TestSharedValues {
+    private EmbeddedSessionStore _store;
+
+    @Before
+    public void setUp() {
+        _store = new EmbeddedSessionStore(4, Duration.ofMillis(10));
+    }
+
+    @After
+    public void tearDown() {
+        _store.close();
+    }
+
+    @Test
+    public void testReplaceAndResolve() throws Exception {
+        SharedValues shared = sharedValues(Duration.ofMinutes(30));
+        List<String> value = new ArrayList<>(Arrays.asList("a", "b"));
+        ScaleoutSession stored = storedForm(shared, value);
+
+        Assert.assertTrue(stored.getAttribute("config") instanceof SharedValueRef);
+        String hash = ((SharedValueRef) stored.getAttribute("config")).hash();
+        Assert.assertEquals(value, read("shared:" + hash));
+
+        ScaleoutSession view = new ScaleoutSession(stored);
+        shared.resolveReferences(view, _store);
+        Assert.assertSame(value, view.getAttribute("config"));
+        Assert.assertEquals(1, shared.hits());
+    }
+
+    @Test
+    public void testValueStoredByAnotherClient() throws Exception {
+        SharedValues first = sharedValues(Duration.ofMinutes(30));
+        SharedValues second = sharedValues(Duration.ofMinutes(30));
+        ScaleoutSession stored = storedForm(first, new ArrayList<>(Arrays.asList("a", "b")));
+
+        // an equal value saved by another client finds the value already stored
+        ScaleoutSession other = storedForm(second, new ArrayList<>(Arrays.asList("a", "b")));
+        Assert.assertEquals(((SharedValueRef) stored.getAttribute("config")).hash(), ((SharedValueRef) other.getAttribute("config")).hash());
+
+        // a client that never saw the value resolves it from the store
+        SharedValues third = sharedValues(Duration.ofMinutes(30));
+        ScaleoutSession view = new ScaleoutSession(stored);
+        third.resolveReferences(view, _store);
+        Assert.assertEquals(Arrays.asList("a", "b"), view.getAttribute("config"));
+        Assert.assertEquals(1, third.misses());
+    }
+
+    @Test
+    public void testRefreshRecreatesMissingValue() throws Exception {
+        SharedValues shared = sharedValues(Duration.ofMillis(100));
+        List<String> value = new ArrayList<>(Arrays.asList("a", "b"));
+        String hash = ((SharedValueRef) storedForm(shared, value, Duration.ofMillis(100)).getAttribute("config")).hash();
+        _store.accessor("shared:" + hash).delete();
+
+        // past the refresh interval the next save stores the value again
+        Thread.sleep(100);
+        storedForm(shared, value, Duration.ofMillis(100));
+        Assert.assertEquals(value, read("shared:" + hash));
+    }
+
+    @Test
+    public void testReadRefreshRecreatesMissingValue() throws Exception {
+        SharedValues shared = sharedValues(Duration.ofMillis(100));
+        List<String> value = new ArrayList<>(Arrays.asList("a", "b"));
+        ScaleoutSession stored = storedForm(shared, value, Duration.ofMillis(100));
+        String hash = ((SharedValueRef) stored.getAttribute("config")).hash();
+        _store.accessor("shared:" + hash).delete();
+
+        // past the refresh interval reading a referencing session stores the value again
+        Thread.sleep(100);
+        ScaleoutSession view = new ScaleoutSession(stored);
+        shared.resolveReferences(view, _store);
+        Assert.assertSame(value, view.getAttribute("config"));
+        Assert.assertEquals(value, read("shared:" + hash));
+    }
+
+    @Test
+    public void testLongerSessionIntervalStoredSeparately() throws Exception {
+        SharedValues shared = sharedValues(Duration.ofMinutes(30));
+        List<String> value = new ArrayList<>(Arrays.asList("a", "b"));
+        ScaleoutSession stored = storedForm(shared, value, Duration.ofHours(2));
+
+        SharedValueRef ref = (SharedValueRef) stored.getAttribute("config");
+        Assert.assertEquals(7200, ref.intervalSeconds());
+        Assert.assertEquals(value, read("shared:" + ref.hash() + "@7200"));
+        Assert.assertNull(read("shared:" + ref.hash()));
+
+        ScaleoutSession view = new ScaleoutSession(stored);
+        sharedValues(Duration.ofMinutes(30)).resolveReferences(view, _store);
+        Assert.assertEquals(value, view.getAttribute("config"));
+    }
+
+    @Test
+    public void testMissingValueRemovesAttribute() throws Exception {
+        SharedValues shared = sharedValues(Duration.ofMinutes(30));
+        ScaleoutSession stored = storedForm(shared, "value");
+        _store.accessor("shared:" + ((SharedValueRef) stored.getAttribute("config")).hash()).delete();
+
+        ScaleoutSession view = new ScaleoutSession(stored);
+        sharedValues(Duration.ofMinutes(30)).resolveReferences(view, _store);
+        Assert.assertNull(view.getAttribute("config"));
+    }
+
+    @Test
+    public void testResizeKeepsAttributesAndStatistics() throws Exception {
+        ScaleoutSessionRepository repository = new ScaleoutSessionRepository("test", Duration.ofMinutes(30), false, _store);
+        try {
+            repository.addSharedAttribute("config");
+            ScaleoutSession session = repository.createSession();
+            session.setAttribute("config", "value");
+            repository.save(session);
+            Assert.assertEquals("value", repository.findById(session.getId()).getAttribute("config"));
+            long hits = repository.sharedValueCacheHits();
+
+            repository.setSharedValueCacheSize(1);
+            ScaleoutSession other = repository.createSession();
+            other.setAttribute("config", "other value");
+            repository.save(other);
+            Assert.assertEquals(hits, repository.sharedValueCacheHits());
+            Assert.assertTrue(((ScaleoutSession) read(other.getId())).getAttribute("config") instanceof SharedValueRef);
+            Assert.assertEquals("value", repository.findById(session.getId()).getAttribute("config"));
+        } finally {
+            repository.shutdown();
+        }
+    }
+
+    // private helper method to create a shared value store for the "config" attribute
+    private static SharedValues sharedValues(Duration maxInactiveTime) {
+        SharedValues shared = new SharedValues(maxInactiveTime, 10);
+        shared.addAttribute("config");
+        return shared;
+    }
+
+    // private helper method to create the stored form of a session holding the parameter value
+    private ScaleoutSession storedForm(SharedValues shared, Object value) {
+        return storedForm(shared, value, Duration.ofMinutes(30));
+    }
+
+    // private helper method to create the stored form of a session with the parameter max inactive interval
+    private ScaleoutSession storedForm(SharedValues shared, Object value, Duration maxInactiveInterval) {
+        ScaleoutSession session = new ScaleoutSession(Instant.now(), maxInactiveInterval);
+        session.setAttribute("config", value);
+        ScaleoutSession snapshot = session.snapshot();
+        shared.replaceWithReferences(snapshot, _store);
+        return snapshot;
+    }
+
+    // private helper method to read an object from the store
+    private Object read(String key) throws SessionStoreException {
+        SessionStore.Accessor da = _store.accessor(key);
+        da.setLockedWhenReading(false);
+        return da.read(EnumSet.of(ReadOption.OBJECT_MAY_NOT_EXIST));
+    }
+}